@@ -0,0 +1,198 @@
+/*
+ * File: AdvJmhFixtures.java
+ * -------------------------
+ * This file builds the operations measured by the JMH benchmarks.
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/* Class: AdvJmhFixtures */
+
+/**
+ * This class builds the operations measured by the benchmarks in jmh/bench. JMH does not accept
+ * benchmarks in the default package and a class in a named package cannot refer to the game,
+ * so the benchmarks look up these methods by name in their setup and measure the LongSupplier
+ * they return. Each operation returns a value that depends on its work, which the benchmark
+ * returns to JMH so the work cannot be optimized away.
+ *
+ * <p>The operations are the ones measured by AdvBenchmark, which stays as a quick runner that
+ * needs no build.
+ */
+
+public class AdvJmhFixtures {
+
+  private AdvJmhFixtures() {
+  }
+
+  /* Static method: load(name, source) */
+
+  /**
+   * Returns an operation that loads a world from its text files or from its image. The image is
+   * compiled first if it is not up to date.
+   *
+   * @param name The name of the world
+   * @param source "text" or "image"
+   * @return The operation
+   * @usage LongSupplier op = AdvJmhFixtures.load(name, source);
+   */
+  public static LongSupplier load(String name, String source) throws IOException {
+    if (source.equals("text")) {
+      return () -> {
+        try {
+          return AdvWorld.loadText(name).getGraph().getRoomCount();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      };
+    }
+    if (!AdvWorldImage.isUpToDate(name)) {
+      AdvWorldImage.compile(name);
+    }
+    return () -> {
+      try {
+        return AdvWorldImage.load(name).getGraph().getRoomCount();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    };
+  }
+
+  /* Static method: parse() */
+
+  /**
+   * Returns an operation that tokenizes one of a few Crowther commands and looks up its command.
+   *
+   * @return The operation
+   * @usage LongSupplier op = AdvJmhFixtures.parse();
+   */
+  public static LongSupplier parse() throws IOException {
+    AdvWorld world = AdvWorld.loadText("Crowther");
+    AdvVocabulary vocabulary = world.getVocabulary();
+    AdvCommandRegistry commands = world.getCommands();
+    AdvParsedCommand parsed = new AdvParsedCommand();
+    String[] inputs = {"take keys", "n", "xyzzy", "inventory", "release rod", "frobnicate"};
+    int[] next = new int[1];
+    return () -> {
+      vocabulary.tokenize(inputs[next[0]++ % inputs.length], parsed);
+      return (commands.getCommand(parsed.getToken(0)) == null) ? 0 : parsed.getToken(1);
+    };
+  }
+
+  /* Static method: motion(kind) */
+
+  /**
+   * Returns an operation that finds an exit of Crowther room 3 through the motion graph: SOUTH,
+   * which needs no key, or XYZZY, which needs the lamp, with and without it.
+   *
+   * @param kind "noKey", "keyHeld" or "keyMissing"
+   * @return The operation
+   * @usage LongSupplier op = AdvJmhFixtures.motion(kind);
+   */
+  public static LongSupplier motion(String kind) throws IOException {
+    AdvWorld world = AdvWorld.loadText("Crowther");
+    AdvMotionGraph graph = world.getGraph();
+    int room = graph.getRoomIndex(3);
+    int direction = graph.getDirectionId(kind.equals("noKey") ? "SOUTH" : "XYZZY");
+    BitSet carried = new BitSet();
+    if (kind.equals("keyHeld")) {
+      for (AdvObject object : world.getObjects()) {
+        if (object.getName().equals("LAMP")) {
+          carried.set(object.getId());
+        }
+      }
+    }
+    return () -> graph.getDestination(graph.findExit(room, direction, carried));
+  }
+
+  /* Static method: look() */
+
+  /**
+   * Returns an operation that plays a LOOK turn in the first room of Crowther, written to an
+   * in-memory sink that is emptied after every turn.
+   *
+   * @return The operation
+   * @usage LongSupplier op = AdvJmhFixtures.look();
+   */
+  public static LongSupplier look() throws IOException {
+    AdvByteArrayOutput output = new AdvByteArrayOutput();
+    Adventure game = new Adventure(AdvWorld.loadText("Crowther"), output);
+    game.start();
+    return () -> {
+      game.step("LOOK");
+      int size = output.size();
+      output.reset();
+      return size;
+    };
+  }
+
+  /* Static method: turn(metrics) */
+
+  /**
+   * Returns an operation that plays the next turn of a cycle (a move, a LOOK, an unknown word and
+   * a move back) in Crowther, with or without AdvMetrics.
+   *
+   * @param metrics true if the game records into AdvMetrics
+   * @return The operation
+   * @usage LongSupplier op = AdvJmhFixtures.turn(metrics);
+   */
+  public static LongSupplier turn(boolean metrics) throws IOException {
+    AdvWorld world = AdvWorld.loadText("Crowther");
+    String[] inputs = {"WEST", "LOOK", "FROBNICATE", "EAST"};
+    AdvByteArrayOutput output = new AdvByteArrayOutput();
+    Adventure game = new Adventure(world, output);
+    game.setMetrics(metrics ? new AdvMetrics(world) : null);
+    game.start();
+    int[] next = new int[1];
+    return () -> {
+      game.step(inputs[next[0]++ & 3]);
+      int size = output.size();
+      output.reset();
+      return size;
+    };
+  }
+
+  /* Static method: batch(mode) */
+
+  /**
+   * Returns an operation that plays a path of eight Crowther moves that ends where it starts:
+   * one command per turn, as one line with separators, or through executeBatch.
+   *
+   * @param mode "oneAtATime", "line" or "executeBatch"
+   * @return The operation
+   * @usage LongSupplier op = AdvJmhFixtures.batch(mode);
+   */
+  public static LongSupplier batch(String mode) throws IOException {
+    List<String> path = Arrays.asList("WEST", "EAST", "IN", "OUT", "WEST", "EAST", "IN", "OUT");
+    String line = String.join(";", path);
+    AdvByteArrayOutput output = new AdvByteArrayOutput();
+    Adventure game = new Adventure(AdvWorld.loadText("Crowther"), output);
+    game.start();
+    switch (mode) {
+      case "oneAtATime":
+        return () -> {
+          for (String command : path) {
+            game.step(command);
+          }
+          int size = output.size();
+          output.reset();
+          return size;
+        };
+      case "line":
+        return () -> {
+          game.step(line);
+          int size = output.size();
+          output.reset();
+          return size;
+        };
+      case "executeBatch":
+        return () -> game.executeBatch(path).length();
+      default:
+        throw new IllegalArgumentException("Unknown batch mode " + mode);
+    }
+  }
+}
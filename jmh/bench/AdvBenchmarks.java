@@ -0,0 +1,208 @@
+/*
+ * File: AdvBenchmarks.java
+ * ------------------------
+ * This file defines the JMH benchmarks of the Adventure game.
+ */
+
+package bench;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* Class: AdvBenchmarks */
+
+/**
+ * This class holds the JMH benchmarks of the game: loading a world, parsing a command, resolving
+ * a move, rendering LOOK, a turn with and without metrics, and a path played with and without
+ * batching. Build and run them from the project root with
+ *
+ * <pre>
+ *   mvn -B -P jmh package
+ *   java -jar target/benchmarks.jar -prof gc
+ * </pre>
+ *
+ * -prof gc adds gc.alloc.rate.norm, the bytes allocated per operation. The operations come from
+ * AdvJmhFixtures, whose methods are found by name because the game is in the default package.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class AdvBenchmarks {
+
+  // calls a static method of AdvJmhFixtures and returns the operation it builds
+  static LongSupplier fixture(String method, Object... args) throws Exception {
+    Class<?>[] types = new Class<?>[args.length];
+    for (int i = 0; i < args.length; i++) {
+      types[i] = (args[i] instanceof Boolean) ? boolean.class : args[i].getClass();
+    }
+    Method m = Class.forName("AdvJmhFixtures").getMethod(method, types);
+    try {
+      return (LongSupplier) m.invoke(null, args);
+    } catch (InvocationTargetException e) {
+      throw (Exception) e.getCause();
+    }
+  }
+
+  /* Class: Load */
+
+  /**
+   * The state of the load benchmark: one world read from one source.
+   */
+
+  @State(Scope.Thread)
+  public static class Load {
+
+    @Param({"Tiny", "Small", "Crowther"})
+    String world;
+
+    @Param({"text", "image"})
+    String source;
+
+    LongSupplier op;
+
+    @Setup
+    public void setup() throws Exception {
+      op = fixture("load", world, source);
+    }
+  }
+
+  /* Class: Motion */
+
+  /**
+   * The state of the motion benchmark: an exit without a key, or one with its key held or missing.
+   */
+
+  @State(Scope.Thread)
+  public static class Motion {
+
+    @Param({"noKey", "keyHeld", "keyMissing"})
+    String kind;
+
+    LongSupplier op;
+
+    @Setup
+    public void setup() throws Exception {
+      op = fixture("motion", kind);
+    }
+  }
+
+  /* Class: Turn */
+
+  /**
+   * The state of the turn benchmark: a game with or without metrics.
+   */
+
+  @State(Scope.Thread)
+  public static class Turn {
+
+    @Param({"false", "true"})
+    boolean metrics;
+
+    LongSupplier op;
+
+    @Setup
+    public void setup() throws Exception {
+      op = fixture("turn", metrics);
+    }
+  }
+
+  /* Class: Batch */
+
+  /**
+   * The state of the batch benchmark: a game and the way its path of eight moves is played.
+   */
+
+  @State(Scope.Thread)
+  public static class Batch {
+
+    @Param({"oneAtATime", "line", "executeBatch"})
+    String mode;
+
+    LongSupplier op;
+
+    @Setup
+    public void setup() throws Exception {
+      op = fixture("batch", mode);
+    }
+  }
+
+  /* Class: Parse */
+
+  /**
+   * The state of the parse benchmark.
+   */
+
+  @State(Scope.Thread)
+  public static class Parse {
+
+    LongSupplier op;
+
+    @Setup
+    public void setup() throws Exception {
+      op = fixture("parse");
+    }
+  }
+
+  /* Class: Look */
+
+  /**
+   * The state of the LOOK benchmark.
+   */
+
+  @State(Scope.Thread)
+  public static class Look {
+
+    LongSupplier op;
+
+    @Setup
+    public void setup() throws Exception {
+      op = fixture("look");
+    }
+  }
+
+  @Benchmark
+  public long load(Load state) {
+    return state.op.getAsLong();
+  }
+
+  @Benchmark
+  public long parse(Parse state) {
+    return state.op.getAsLong();
+  }
+
+  @Benchmark
+  public long motion(Motion state) {
+    return state.op.getAsLong();
+  }
+
+  @Benchmark
+  public long look(Look state) {
+    return state.op.getAsLong();
+  }
+
+  @Benchmark
+  public long turn(Turn state) {
+    return state.op.getAsLong();
+  }
+
+  @Benchmark
+  public long batch(Batch state) {
+    return state.op.getAsLong();
+  }
+}
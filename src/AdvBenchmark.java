@@ -0,0 +1,288 @@
+/*
+ * File: AdvBenchmark.java
+ * -----------------------
+ * This program measures the throughput and allocation rate of the
+ * main operations of the Adventure game.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/* Class: AdvBenchmark */
+
+/**
+ * This class is a quick benchmark runner for the Adventure game that needs no build. The same
+ * operations are measured under JMH by jmh/bench/AdvBenchmarks, which forks and guards against
+ * dead code and is the one to trust; see the jmh profile in pom.xml. Each benchmark here runs an
+ * operation repeatedly, first to warm up the JIT and then for a measured interval, and reports the
+ * throughput together with the number of bytes allocated per operation, which is what JMH reports
+ * as gc.alloc.rate.norm under -prof gc. Allocation is measured with the per-thread allocation
+ * counters of the HotSpot ThreadMXBean, summed over all live threads.
+ *
+ * <p>The suite covers:
+ *
+ * <ul>
+ * <li>Loading the Tiny, Small and Crowther worlds, and any world named on the command line, from
+ * text and from a compiled image when one is up to date
+ * <li>Parsing and dispatching one command
+ * <li>Resolving a move through the motion graph, with and without a key
+ * <li>Rendering LOOK
+ * <li>A cycle of turns with and without AdvMetrics, which gives the cost of the metrics
+ * <li>A path of eight moves played one command per turn, as one line with separators and through
+ * executeBatch, which gives the cost per command saved by batching
+ * </li>
+ *
+ * Usage: java AdvBenchmark [-time millis] [world ...]
+ */
+
+public class AdvBenchmark {
+
+  private static final String[] BUILT_IN_WORLDS = {"Tiny", "Small", "Crowther"};
+
+  // results are folded into this field so the JIT cannot drop the measured work
+  private static volatile long sink;
+
+  private final long measureNanos;
+
+  /**
+   * Creates a harness that measures each benchmark for the specified time.
+   *
+   * @param measureMillis The measured time of each benchmark
+   * @usage AdvBenchmark bench = new AdvBenchmark(measureMillis);
+   */
+  public AdvBenchmark(long measureMillis) {
+    this.measureNanos = measureMillis * 1000000L;
+  }
+
+  /* Interface: Operation */
+
+  /**
+   * The operation measured by a benchmark. It returns a value that depends on its work, which the
+   * harness consumes.
+   */
+
+  public interface Operation {
+
+    long run() throws Exception;
+  }
+
+  /* Method: measure(name, op) */
+
+  /**
+   * Runs one benchmark and prints its result line.
+   *
+   * @param name The name of the benchmark
+   * @param op The operation to measure
+   * @usage bench.measure(name, op);
+   */
+  public void measure(String name, Operation op) throws Exception {
+    runFor(op, measureNanos / 2);
+    long allocatedBefore = allocatedBytes();
+    long start = System.nanoTime();
+    long ops = runFor(op, measureNanos);
+    long elapsed = System.nanoTime() - start;
+    long allocated = allocatedBytes() - allocatedBefore;
+    double opsPerSecond = ops * 1e9 / elapsed;
+    String line = String.format("%-40s %14.1f ops/s %12.3f us/op %12.1f B/op %10.1f MB/s",
+        name, opsPerSecond, elapsed / 1e3 / ops, (double) allocated / ops,
+        allocated * 1e3 / elapsed);
+    System.out.println(line);
+  }
+
+  private long runFor(Operation op, long nanos) throws Exception {
+    long deadline = System.nanoTime() + nanos;
+    long ops = 0;
+    long value = 0;
+    int batch = 1;
+    while (System.nanoTime() < deadline) {
+      for (int i = 0; i < batch; i++) {
+        value += op.run();
+      }
+      ops += batch;
+      if (batch < 1024) {
+        batch *= 2;
+      }
+    }
+    sink += value;
+    return ops;
+  }
+
+  // the bytes allocated so far by all live threads, so the loader's pool threads are included
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+      return 0;
+    }
+    long total = 0;
+    for (long bytes : ((com.sun.management.ThreadMXBean) bean)
+        .getThreadAllocatedBytes(bean.getAllThreadIds())) {
+      total += Math.max(0, bytes);
+    }
+    return total;
+  }
+
+  /* Benchmarks */
+
+  /**
+   * Measures loading a world from its text files and, if one is up to date, from its image.
+   *
+   * @param name The name of the world
+   * @usage bench.benchmarkLoad(name);
+   */
+  public void benchmarkLoad(String name) throws Exception {
+    measure("load.text." + name, () -> AdvWorld.loadText(name).getGraph().getRoomCount());
+    if (AdvWorldImage.isUpToDate(name)) {
+      measure("load.image." + name, () -> AdvWorldImage.load(name).getGraph().getRoomCount());
+    }
+  }
+
+  /**
+   * Measures tokenizing a command line and looking up its command.
+   *
+   * @param world The world whose vocabulary is used
+   * @usage bench.benchmarkParse(world);
+   */
+  public void benchmarkParse(AdvWorld world) throws Exception {
+    AdvVocabulary vocabulary = world.getVocabulary();
+    AdvCommandRegistry commands = world.getCommands();
+    AdvParsedCommand parsed = new AdvParsedCommand();
+    String[] inputs = {"take keys", "n", "xyzzy", "inventory", "release rod", "frobnicate"};
+    int[] next = new int[1];
+    measure("parse.dispatch", () -> {
+      String input = inputs[next[0]++ % inputs.length];
+      vocabulary.tokenize(input, parsed);
+      return (commands.getCommand(parsed.getToken(0)) == null) ? 0 : parsed.getToken(1);
+    });
+  }
+
+  /**
+   * Measures finding the exit of a room through the motion graph, once for an exit without a key
+   * and once for an exit that needs one. For Crowther this is XYZZY in room 3, which needs the
+   * lamp.
+   *
+   * @param world The world, normally Crowther
+   * @usage bench.benchmarkMotion(world);
+   */
+  public void benchmarkMotion(AdvWorld world) throws Exception {
+    AdvMotionGraph graph = world.getGraph();
+    int room = graph.getRoomIndex(3);
+    int south = graph.getDirectionId("SOUTH");
+    int xyzzy = graph.getDirectionId("XYZZY");
+    BitSet empty = new BitSet();
+    BitSet withLamp = new BitSet();
+    for (AdvObject object : world.getObjects()) {
+      if (object.getName().equals("LAMP")) {
+        withLamp.set(object.getId());
+      }
+    }
+    measure("motion.noKey", () -> graph.getDestination(graph.findExit(room, south, empty)));
+    measure("motion.keyHeld", () -> graph.getDestination(graph.findExit(room, xyzzy, withLamp)));
+    measure("motion.keyMissing", () -> graph.getDestination(graph.findExit(room, xyzzy, empty)));
+  }
+
+  /**
+   * Measures a full LOOK turn in the first room of the world, written to an in-memory sink that is
+   * emptied after every turn.
+   *
+   * @param world The world
+   * @usage bench.benchmarkLook(world);
+   */
+  public void benchmarkLook(AdvWorld world) throws Exception {
+    AdvByteArrayOutput output = new AdvByteArrayOutput();
+    Adventure game = new Adventure(world, output);
+    game.start();
+    measure("look.render", () -> {
+      game.step("LOOK");
+      int size = output.size();
+      output.reset();
+      return size;
+    });
+  }
+
+  /**
+   * Measures a cycle of turns (a move, a LOOK, an unknown word and a move back) in a game that
+   * records no metrics and in one that records into AdvMetrics. The difference between the two
+   * is the overhead of the metrics.
+   *
+   * @param world The world, normally Crowther
+   * @usage bench.benchmarkMetrics(world);
+   */
+  public void benchmarkMetrics(AdvWorld world) throws Exception {
+    String[] inputs = {"WEST", "LOOK", "FROBNICATE", "EAST"};
+    for (boolean on : new boolean[] {false, true}) {
+      AdvByteArrayOutput output = new AdvByteArrayOutput();
+      Adventure game = new Adventure(world, output);
+      game.setMetrics(on ? new AdvMetrics(world) : null);
+      game.start();
+      int[] next = new int[1];
+      measure(on ? "turn.metrics" : "turn.noMetrics", () -> {
+        game.step(inputs[next[0]++ & 3]);
+        int size = output.size();
+        output.reset();
+        return size;
+      });
+    }
+  }
+
+  /**
+   * Measures a path of eight moves that ends where it starts, played as eight turns, as one line of
+   * commands separated by semicolons, and as one call to executeBatch. Each operation is the whole
+   * path, so the difference in time per operation divided by eight is the saving per command.
+   *
+   * @param world The world, normally Crowther
+   * @usage bench.benchmarkBatch(world);
+   */
+  public void benchmarkBatch(AdvWorld world) throws Exception {
+    List<String> path = Arrays.asList("WEST", "EAST", "IN", "OUT", "WEST", "EAST", "IN", "OUT");
+    String line = String.join(";", path);
+    AdvByteArrayOutput output = new AdvByteArrayOutput();
+    Adventure game = new Adventure(world, output);
+    game.start();
+    measure("batch.oneAtATime", () -> {
+      for (String command : path) {
+        game.step(command);
+      }
+      int size = output.size();
+      output.reset();
+      return size;
+    });
+    measure("batch.line", () -> {
+      game.step(line);
+      int size = output.size();
+      output.reset();
+      return size;
+    });
+    measure("batch.executeBatch", () -> game.executeBatch(path).length());
+  }
+
+  /**
+   * Runs the benchmark suite.
+   */
+  public static void main(String[] args) throws Exception {
+    long millis = 2000;
+    List<String> worlds = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-time")) {
+        millis = Long.parseLong(args[++i]);
+      } else {
+        worlds.add(args[i]);
+      }
+    }
+    AdvBenchmark bench = new AdvBenchmark(millis);
+    for (String name : BUILT_IN_WORLDS) {
+      bench.benchmarkLoad(name);
+    }
+    for (String name : worlds) {
+      bench.benchmarkLoad(name);
+    }
+    AdvWorld crowther = AdvWorld.loadText("Crowther");
+    bench.benchmarkParse(crowther);
+    bench.benchmarkMotion(crowther);
+    bench.benchmarkLook(crowther);
+    bench.benchmarkMetrics(crowther);
+    bench.benchmarkBatch(crowther);
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * File: AdvByteArrayOutput.java
+ * -----------------------------
+ * This file defines the output sink that collects the output of a
+ * game in memory.
+ */
+
+import java.util.Arrays;
+
+/* Class: AdvByteArrayOutput */
+
+/**
+ * This class collects the turns written by a game in a byte array, which is the sink used by tests,
+ * by the replay runner and by AdvEngine to return each turn as a string. The array is allocated
+ * on the first turn. Once drain has handed the text over, the sink holds no arrays at all until
+ * the next turn.
+ */
+
+public class AdvByteArrayOutput extends AdvOutput {
+
+  private byte[] data;
+  private int size;
+
+  @Override
+  protected void emit(byte[] bytes, int offset, int count) {
+    if (data == null) {
+      data = new byte[Math.max(256, count)];
+    } else if (size + count > data.length) {
+      data = Arrays.copyOf(data, Math.max(2 * data.length, size + count));
+    }
+    System.arraycopy(bytes, offset, data, size, count);
+    size += count;
+  }
+
+  /* Method: size() */
+
+  /**
+   * Returns the number of bytes collected so far.
+   *
+   * @return The number of bytes
+   * @usage int n = output.size();
+   */
+  public int size() {
+    return size;
+  }
+
+  /* Method: toByteArray() */
+
+  /**
+   * Returns a copy of the bytes collected so far.
+   *
+   * @return The collected bytes
+   * @usage byte[] bytes = output.toByteArray();
+   */
+  public byte[] toByteArray() {
+    return (size == 0) ? new byte[0] : Arrays.copyOf(data, size);
+  }
+
+  /* Method: reset() */
+
+  /**
+   * Discards the bytes collected so far, keeping the array for reuse.
+   *
+   * @usage output.reset();
+   */
+  public void reset() {
+    size = 0;
+  }
+
+  /* Method: drain() */
+
+  /**
+   * Returns the text collected so far, resets the sink and releases its arrays.
+   *
+   * @return The collected text
+   * @usage String text = output.drain();
+   */
+  public String drain() {
+    String text = toString();
+    size = 0;
+    data = null;
+    trim();
+    return text;
+  }
+
+  @Override
+  public String toString() {
+    return (size == 0) ? "" : decode(data, 0, size);
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * File: AdvChannelOutput.java
+ * ---------------------------
+ * This file defines the output sink that writes to a channel, such
+ * as a socket.
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/* Class: AdvChannelOutput */
+
+/**
+ * This class writes each turn of a game to a WritableByteChannel, such as a SocketChannel or a
+ * FileChannel, wrapping the turn buffer instead of copying it. The channel should be in blocking
+ * mode, since the turn is written completely before flush returns.
+ */
+
+public class AdvChannelOutput extends AdvOutput {
+
+  private final WritableByteChannel channel;
+
+  /**
+   * Creates a sink that writes to the specified channel.
+   *
+   * @param channel The channel to write to
+   * @usage AdvOutput output = new AdvChannelOutput(channel);
+   */
+  public AdvChannelOutput(WritableByteChannel channel) {
+    this.channel = channel;
+  }
+
+  @Override
+  protected void emit(byte[] bytes, int offset, int count) {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, count);
+    try {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * File: AdvCommandRegistry.java
+ * -----------------------------
+ * This file defines the table that maps the tokens of a world to
+ * the commands they invoke.
+ */
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/* Class: AdvCommandRegistry */
+
+/**
+ * This class maps each token of a world's vocabulary to the command it invokes: the built-in verbs,
+ * one shared AdvMotionCommand for each direction used by the world, and the verbs contributed by
+ * AdvVerbProvider services. Dispatching a command is a single array access, and a word that is not
+ * a verb or a direction has no command at all, so it is rejected before any motion table is
+ * searched.
+ *
+ * <p>Each command is registered under the token of its exact word. Looking the word up instead
+ * would follow a synonym with the same spelling, so a direction named like a synonym key would
+ * take over the command of the word the synonym stands for.
+ */
+
+public class AdvCommandRegistry {
+
+  private static Map<String, AdvCommand> providedVerbs;
+
+  private final AdvCommand[] commands;
+
+  /**
+   * Builds the registry for a world with the verbs of the AdvVerbProvider services on the class
+   * path.
+   *
+   * @param vocabulary The vocabulary of the world
+   * @param graph The motion graph of the world
+   * @usage AdvCommandRegistry registry = new AdvCommandRegistry(vocabulary, graph);
+   */
+  public AdvCommandRegistry(AdvVocabulary vocabulary, AdvMotionGraph graph) {
+    this(vocabulary, graph, getProvidedVerbs());
+  }
+
+  /**
+   * Builds the registry for a world with the specified provided verbs, which must also be in the
+   * vocabulary.
+   *
+   * @param vocabulary The vocabulary of the world
+   * @param graph The motion graph of the world
+   * @param verbs A map from provided verb to command, as returned by loadVerbs
+   * @usage AdvCommandRegistry registry = new AdvCommandRegistry(vocabulary, graph, verbs);
+   */
+  public AdvCommandRegistry(AdvVocabulary vocabulary, AdvMotionGraph graph,
+      Map<String, AdvCommand> verbs) {
+    commands = new AdvCommand[vocabulary.size()];
+    Map<String, Integer> tokens = new HashMap<>();
+    for (int token = 0; token < vocabulary.size(); token++) {
+      tokens.put(vocabulary.getWord(token), token);
+      int dir = vocabulary.getDirection(token);
+      if (dir >= 0) {
+        commands[token] = new AdvMotionCommand(graph.getDirectionName(dir), dir);
+      }
+    }
+    register(tokens, "QUIT", AdvCommand.QUIT);
+    register(tokens, "LOOK", AdvCommand.LOOK);
+    register(tokens, "INVENTORY", AdvCommand.INVENTORY);
+    register(tokens, "TAKE", AdvCommand.TAKE);
+    register(tokens, "DROP", AdvCommand.DROP);
+    register(tokens, "HELP", AdvCommand.HELP);
+    for (Map.Entry<String, AdvCommand> e : verbs.entrySet()) {
+      register(tokens, e.getKey(), e.getValue());
+    }
+  }
+
+  private void register(Map<String, Integer> tokens, String word, AdvCommand command) {
+    Integer token = tokens.get(word);
+    if (token != null) {
+      commands[token] = command;
+    }
+  }
+
+  /* Method: getCommand(token) */
+
+  /**
+   * Returns the command invoked by a token, or null if the token is -1 or is not a verb or a
+   * direction.
+   *
+   * @param token The token of the first word of a command
+   * @return The command, or null
+   * @usage AdvCommand cmd = registry.getCommand(token);
+   */
+  public AdvCommand getCommand(int token) {
+    return (token < 0) ? null : commands[token];
+  }
+
+  /* Static method: getProvidedVerbs() */
+
+  /**
+   * Returns the verbs contributed by the AdvVerbProvider services on the class path. The services
+   * are loaded the first time this method is called.
+   *
+   * @return A read-only map from verb to command
+   * @usage Map<String, AdvCommand> verbs = AdvCommandRegistry.getProvidedVerbs();
+   */
+  public static synchronized Map<String, AdvCommand> getProvidedVerbs() {
+    if (providedVerbs == null) {
+      providedVerbs = loadVerbs(Thread.currentThread().getContextClassLoader());
+    }
+    return providedVerbs;
+  }
+
+  /* Static method: loadVerbs(loader) */
+
+  /**
+   * Returns the verbs contributed by the AdvVerbProvider services that a class loader can see.
+   * Unlike getProvidedVerbs, the services are loaded again on every call.
+   *
+   * @param loader The class loader that finds the services and their classes
+   * @return A read-only map from verb to command
+   * @usage Map<String, AdvCommand> verbs = AdvCommandRegistry.loadVerbs(loader);
+   */
+  public static Map<String, AdvCommand> loadVerbs(ClassLoader loader) {
+    Map<String, AdvCommand> verbs = new LinkedHashMap<>();
+    for (AdvVerbProvider provider : ServiceLoader.load(AdvVerbProvider.class, loader)) {
+      verbs.putAll(provider.getVerbs());
+    }
+    return Collections.unmodifiableMap(verbs);
+  }
+}
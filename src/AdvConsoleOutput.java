@@ -0,0 +1,44 @@
+/*
+ * File: AdvConsoleOutput.java
+ * ---------------------------
+ * This file defines the output sink that writes to the console.
+ */
+
+import java.io.PrintStream;
+
+/* Class: AdvConsoleOutput */
+
+/**
+ * This class writes each turn of a game to System.out with a single write followed by a single
+ * flush.
+ */
+
+public class AdvConsoleOutput extends AdvOutput {
+
+  private final PrintStream stream;
+
+  /**
+   * Creates a sink that writes to System.out.
+   *
+   * @usage AdvOutput output = new AdvConsoleOutput();
+   */
+  public AdvConsoleOutput() {
+    this(System.out);
+  }
+
+  /**
+   * Creates a sink that writes to the specified stream.
+   *
+   * @param stream The stream to write to
+   * @usage AdvOutput output = new AdvConsoleOutput(stream);
+   */
+  public AdvConsoleOutput(PrintStream stream) {
+    this.stream = stream;
+  }
+
+  @Override
+  protected void emit(byte[] bytes, int offset, int count) {
+    stream.write(bytes, offset, count);
+    stream.flush();
+  }
+}
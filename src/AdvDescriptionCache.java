@@ -0,0 +1,121 @@
+/*
+ * File: AdvDescriptionCache.java
+ * ------------------------------
+ * This file defines the cache that serves room descriptions from
+ * the text region of a memory-mapped world image.
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/* Class: AdvDescriptionCache */
+
+/**
+ * This class decodes room descriptions on demand from the text region of a world image, which
+ * stays outside the Java heap in a mapped buffer. The most recently used descriptions are kept in a
+ * bounded LRU cache, so the heap holds only the descriptions of rooms that players are actually
+ * seeing. The cache counts its hits and misses.
+ */
+
+public class AdvDescriptionCache {
+
+  private final ByteBuffer text;
+  private final Map<Long, String[]> cache;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * Creates a cache over the specified text region.
+   *
+   * @param text The text region of the image; only absolute reads are used, so the buffer may be
+   *     shared
+   * @param capacity The maximum number of decoded descriptions kept in memory
+   * @usage AdvDescriptionCache cache = new AdvDescriptionCache(text, capacity);
+   */
+  public AdvDescriptionCache(ByteBuffer text, int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be at least 1");
+    }
+    this.text = text;
+    this.cache = new LinkedHashMap<Long, String[]>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, String[]> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /* Method: get(offset, length, lineCount) */
+
+  /**
+   * Returns the description stored at the specified position of the text region, decoding it if it
+   * is not in the cache. The returned array is shared and must not be changed.
+   *
+   * @param offset The position of the description in the text region
+   * @param length The length of the description in bytes
+   * @param lineCount The number of lines in the description
+   * @return The lines of the description
+   * @usage String[] description = cache.get(offset, length, lineCount);
+   */
+  public String[] get(int offset, int length, int lineCount) {
+    // an empty description has the same offset as the one stored after it, so the key needs both
+    Long key = ((long) offset << 32) | length;
+    String[] description;
+    synchronized (cache) {
+      description = cache.get(key);
+    }
+    if (description != null) {
+      hits.increment();
+      return description;
+    }
+    misses.increment();
+    byte[] bytes = new byte[length];
+    text.get(offset, bytes, 0, length);
+    description = AdvWorldImage.splitLines(new String(bytes, StandardCharsets.UTF_8), lineCount);
+    synchronized (cache) {
+      cache.put(key, description);
+    }
+    return description;
+  }
+
+  /* Method: getHits() */
+
+  /**
+   * Returns the number of lookups that were answered from the cache.
+   *
+   * @return The number of cache hits
+   * @usage long hits = cache.getHits();
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /* Method: getMisses() */
+
+  /**
+   * Returns the number of lookups that had to decode the description from the image.
+   *
+   * @return The number of cache misses
+   * @usage long misses = cache.getMisses();
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /* Method: size() */
+
+  /**
+   * Returns the number of descriptions currently held in the cache.
+   *
+   * @return The number of cached descriptions
+   * @usage int n = cache.size();
+   */
+  public int size() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * File: AdvEngine.java
+ * --------------------
+ * This file defines the engine that runs many Adventure games on
+ * one shared world.
+ */
+
+/* Class: AdvEngine */
+
+/**
+ * This class runs any number of independent games on a single AdvWorld. The world is loaded once
+ * and shared read-only; each session is an Adventure instance that carries only the state of one
+ * player. The engine never touches System.in or System.out, so sessions can be driven from any
+ * thread, including virtual threads.
+ *
+ * <p>A session writes its output to an AdvOutput sink. Sessions created by newSession() collect
+ * it in memory, and start and step return the text of each turn; a session created with its own
+ * sink, such as an AdvChannelOutput, writes each turn there and start and step return null.
+ */
+
+public class AdvEngine {
+
+  private final AdvWorld world;
+  private final AdvMetrics metrics;
+
+  /**
+   * Creates an engine for the specified world.
+   *
+   * @param world The world shared by every session of this engine
+   * @usage AdvEngine engine = new AdvEngine(world);
+   */
+  public AdvEngine(AdvWorld world) {
+    this(world, null);
+  }
+
+  /**
+   * Creates an engine for the specified world whose sessions record into the specified metrics.
+   *
+   * @param world The world shared by every session of this engine
+   * @param metrics The metrics every session records into, or null for none
+   * @usage AdvEngine engine = new AdvEngine(world, metrics);
+   */
+  public AdvEngine(AdvWorld world, AdvMetrics metrics) {
+    this.world = world;
+    this.metrics = metrics;
+  }
+
+  /* Method: getWorld() */
+
+  /**
+   * Returns the world shared by the sessions of this engine.
+   *
+   * @return The shared world
+   * @usage AdvWorld world = engine.getWorld();
+   */
+  public AdvWorld getWorld() {
+    return world;
+  }
+
+  /* Method: newSession() */
+
+  /**
+   * Creates a new session. The session has not started yet; call start to get the opening text.
+   *
+   * @return A new game on the shared world
+   * @usage Adventure session = engine.newSession();
+   */
+  public Adventure newSession() {
+    return newSession(new AdvByteArrayOutput());
+  }
+
+  /**
+   * Creates a new session that writes its output to the specified sink.
+   *
+   * @param output The sink that receives the output of every turn
+   * @return A new game on the shared world
+   * @usage Adventure session = engine.newSession(output);
+   */
+  public Adventure newSession(AdvOutput output) {
+    Adventure session = new Adventure(world, output);
+    session.setMetrics(metrics);
+    return session;
+  }
+
+  /* Method: getMetrics() */
+
+  /**
+   * Returns the metrics the sessions of this engine record into, or null if there are none.
+   *
+   * @return The metrics, or null
+   * @usage AdvMetrics metrics = engine.getMetrics();
+   */
+  public AdvMetrics getMetrics() {
+    return metrics;
+  }
+
+  /* Method: start(session) */
+
+  /**
+   * Starts the session and returns the opening text of the game.
+   *
+   * @param session The session to start
+   * @return The output of the game up to the first prompt, or null if it went to another sink
+   * @usage String output = engine.start(session);
+   */
+  public String start(Adventure session) {
+    synchronized (session) {
+      session.start();
+      return collect(session);
+    }
+  }
+
+  /* Method: step(session, input) */
+
+  /**
+   * Executes one line of input for the specified session and returns the output. Different
+   * sessions may be stepped concurrently; calls for the same session are serialized.
+   *
+   * @param session The session the input belongs to
+   * @param input The line typed by the player
+   * @return The output of the game up to the next prompt, or null if it went to another sink
+   * @usage String output = engine.step(session, input);
+   */
+  public String step(Adventure session, String input) {
+    synchronized (session) {
+      session.step(input);
+      return collect(session);
+    }
+  }
+
+  private static String collect(Adventure session) {
+    AdvOutput output = session.getOutput();
+    return (output instanceof AdvByteArrayOutput) ? ((AdvByteArrayOutput) output).drain() : null;
+  }
+}
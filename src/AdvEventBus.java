@@ -0,0 +1,401 @@
+/*
+ * File: AdvEventBus.java
+ * ----------------------
+ * This file defines the ring buffer through which a game publishes
+ * what happens in it to consumers on other threads.
+ */
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/* Class: AdvEventBus */
+
+/**
+ * This class carries the events of one game, such as a room being entered or an object being
+ * taken, to any number of consumers on other threads. A game publishes into it through
+ * Adventure.setEventBus; the game is the only producer.
+ *
+ * <p>The events are kept in a ring buffer whose slots are allocated when the bus is created: a
+ * slot is a type, a room number, an argument and a time stamp, held in parallel arrays, and
+ * publishing fills in the next slot and then releases its sequence number, so it neither
+ * allocates nor takes a lock nor waits. Each subscription reads the ring at its own pace with its
+ * own cursor, either by calling poll or from a thread of its own started with start.
+ *
+ * <p>The ring has room for a fixed number of events, and when the slowest subscription falls that
+ * far behind the policy of the bus decides what gives:
+ *
+ * <ul>
+ * <li>DROP, the default, leaves the ring alone and counts the new event as dropped, so the
+ * subscriptions see an unbroken prefix of the events
+ * <li>OVERWRITE writes over the oldest event, so the game never even looks at the cursors of the
+ * subscriptions; a subscription that has been lapped skips ahead and reports how many events it
+ * lost through Listener.onLost
+ * </li>
+ */
+
+public class AdvEventBus {
+
+  /**
+   * A room was entered. The argument is unused.
+   */
+  public static final int ROOM_ENTERED = 0;
+
+  /**
+   * The player took an object. The argument is the id of the object.
+   */
+  public static final int OBJECT_TAKEN = 1;
+
+  /**
+   * The player dropped an object. The argument is the id of the object.
+   */
+  public static final int OBJECT_DROPPED = 2;
+
+  /**
+   * A move was rejected. The argument is the direction token, or -1 for a word that is no
+   * direction.
+   */
+  public static final int MOVE_REJECTED = 3;
+
+  /**
+   * The game ended. The argument is 1 if the player reached the end, or 0 if they quit. The room
+   * is the room the player was last in.
+   */
+  public static final int GAME_OVER = 4;
+
+  /**
+   * The policy that counts events as dropped when the ring is full
+   */
+  public static final int DROP = 0;
+
+  /**
+   * The policy that overwrites the oldest events when the ring is full
+   */
+  public static final int OVERWRITE = 1;
+
+  private static final String[] TYPE_NAMES = {"RoomEntered", "ObjectTaken", "ObjectDropped",
+      "MoveRejected", "GameOver"};
+
+  private final int mask;
+  private final int policy;
+  private final int[] types;
+  private final int[] rooms;
+  private final int[] args;
+  private final long[] times;
+  // the sequence number of the event in each slot, or -1; written last, with release semantics
+  private final AtomicLongArray published;
+  // the sequence number of the next event; only the game writes it
+  private final AtomicLong next = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  // replaced as a whole when a subscription is added or closed, so the game reads it without a lock
+  private volatile Subscription[] subscriptions = new Subscription[0];
+  // the smallest cursor of the subscriptions when the game last looked, so it rarely looks
+  private long cachedMinimum;
+
+  /**
+   * Creates a bus with the DROP policy.
+   *
+   * @param capacity The number of events the ring holds, rounded up to a power of two
+   * @usage AdvEventBus bus = new AdvEventBus(capacity);
+   */
+  public AdvEventBus(int capacity) {
+    this(capacity, DROP);
+  }
+
+  /**
+   * Creates a bus with the specified policy.
+   *
+   * @param capacity The number of events the ring holds, rounded up to a power of two
+   * @param policy DROP or OVERWRITE
+   * @usage AdvEventBus bus = new AdvEventBus(capacity, policy);
+   */
+  public AdvEventBus(int capacity, int policy) {
+    if (policy != DROP && policy != OVERWRITE) {
+      throw new IllegalArgumentException("Unknown policy " + policy);
+    }
+    int size = Integer.highestOneBit(Math.max(2, Math.min(1 << 30, capacity)));
+    if (size < capacity && size < (1 << 30)) {
+      size <<= 1;
+    }
+    this.mask = size - 1;
+    this.policy = policy;
+    types = new int[size];
+    rooms = new int[size];
+    args = new int[size];
+    times = new long[size];
+    published = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      published.set(i, -1);
+    }
+  }
+
+  /* Static method: getTypeName(type) */
+
+  /**
+   * Returns the name of an event type, such as "RoomEntered".
+   *
+   * @param type The event type
+   * @return The name of the type
+   * @usage String name = AdvEventBus.getTypeName(type);
+   */
+  public static String getTypeName(int type) {
+    return TYPE_NAMES[type];
+  }
+
+  /* Method: publish(type, room, arg) */
+
+  /**
+   * Publishes an event. Only the game that owns the bus may call this method. It never blocks and
+   * never allocates.
+   *
+   * @param type The event type
+   * @param room The number of the room the event happened in
+   * @param arg The argument of the event, which depends on its type
+   * @return true if the event was published, or false if it was dropped
+   * @usage bus.publish(type, room, arg);
+   */
+  public boolean publish(int type, int room, int arg) {
+    long sequence = next.get();
+    if (policy == DROP && sequence - cachedMinimum > mask) {
+      cachedMinimum = minimumCursor(sequence);
+      if (sequence - cachedMinimum > mask) {
+        dropped.incrementAndGet();
+        return false;
+      }
+    }
+    int slot = (int) sequence & mask;
+    // mark the slot as being written, so a reader that races with the writes below retries
+    published.lazySet(slot, -1);
+    VarHandle.releaseFence();
+    types[slot] = type;
+    rooms[slot] = room;
+    args[slot] = arg;
+    times[slot] = System.nanoTime();
+    published.lazySet(slot, sequence);
+    next.lazySet(sequence + 1);
+    return true;
+  }
+
+  private long minimumCursor(long limit) {
+    long minimum = limit;
+    for (Subscription subscription : subscriptions) {
+      minimum = Math.min(minimum, subscription.cursor.get());
+    }
+    return minimum;
+  }
+
+  /* Method: getPublished() */
+
+  /**
+   * Returns the number of events published so far.
+   *
+   * @return The number of events published
+   * @usage long n = bus.getPublished();
+   */
+  public long getPublished() {
+    return next.get();
+  }
+
+  /* Method: getDropped() */
+
+  /**
+   * Returns the number of events dropped because the ring was full, which is always 0 under the
+   * OVERWRITE policy.
+   *
+   * @return The number of events dropped
+   * @usage long n = bus.getDropped();
+   */
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  /* Method: subscribe() */
+
+  /**
+   * Adds a subscription that sees the events published from now on.
+   *
+   * @return The new subscription
+   * @usage Subscription subscription = bus.subscribe();
+   */
+  public synchronized Subscription subscribe() {
+    Subscription subscription = new Subscription(next.get());
+    Subscription[] all = Arrays.copyOf(subscriptions, subscriptions.length + 1);
+    all[all.length - 1] = subscription;
+    subscriptions = all;
+    return subscription;
+  }
+
+  private synchronized void unsubscribe(Subscription subscription) {
+    Subscription[] remaining = new Subscription[subscriptions.length];
+    int n = 0;
+    for (Subscription s : subscriptions) {
+      if (s != subscription) {
+        remaining[n++] = s;
+      }
+    }
+    subscriptions = Arrays.copyOf(remaining, n);
+  }
+
+  /* Interface: Listener */
+
+  /**
+   * The receiver of the events of a subscription. Its methods are called on the thread that
+   * drains the subscription, one event at a time and in order.
+   */
+
+  public interface Listener {
+
+    /**
+     * Receives one event.
+     *
+     * @param sequence The sequence number of the event, counting from 0
+     * @param type The event type
+     * @param room The number of the room the event happened in
+     * @param arg The argument of the event
+     * @param nanos The System.nanoTime at which the event was published
+     */
+    void onEvent(long sequence, int type, int room, int arg, long nanos);
+
+    /**
+     * Reports that events were overwritten before this subscription read them. The default
+     * implementation ignores the report.
+     *
+     * @param count The number of events lost
+     */
+    default void onLost(long count) {
+    }
+  }
+
+  /* Class: Subscription */
+
+  /**
+   * This class is the cursor of one consumer in the ring. A subscription must be drained by one
+   * thread at a time.
+   */
+
+  public class Subscription {
+
+    private final AtomicLong cursor;
+    private final AtomicLong lost = new AtomicLong();
+    private volatile Thread thread;
+
+    Subscription(long start) {
+      cursor = new AtomicLong(start);
+    }
+
+    /* Method: poll(listener) */
+
+    /**
+     * Passes the events published since the last poll to a listener and returns how many there
+     * were.
+     *
+     * @param listener The listener that receives the events
+     * @return The number of events passed on
+     * @usage int n = subscription.poll(listener);
+     */
+    public int poll(Listener listener) {
+      long position = cursor.get();
+      long end = next.get();
+      int count = 0;
+      while (position < end) {
+        if (end - position > mask + 1) {
+          // lapped by the game; skip to the oldest event still in the ring
+          long skipped = end - mask - 1 - position;
+          lost.addAndGet(skipped);
+          listener.onLost(skipped);
+          position += skipped;
+        }
+        int slot = (int) position & mask;
+        int type = types[slot];
+        int room = rooms[slot];
+        int arg = args[slot];
+        long nanos = times[slot];
+        VarHandle.acquireFence();
+        if (published.get(slot) != position) {
+          // overwritten while it was read, or being overwritten now
+          end = next.get();
+          if (end - position <= mask + 1) {
+            Thread.onSpinWait();
+          }
+          continue;
+        }
+        listener.onEvent(position, type, room, arg, nanos);
+        position++;
+        count++;
+        cursor.lazySet(position);
+      }
+      return count;
+    }
+
+    /* Method: getLost() */
+
+    /**
+     * Returns the number of events that were overwritten before this subscription read them.
+     *
+     * @return The number of events lost
+     * @usage long n = subscription.getLost();
+     */
+    public long getLost() {
+      return lost.get();
+    }
+
+    /* Method: start(listener, idleMicros) */
+
+    /**
+     * Starts a daemon thread that drains this subscription into a listener until close is called.
+     * When the ring is empty the thread parks for the specified time, so the game never has to wake
+     * it.
+     *
+     * @param listener The listener that receives the events
+     * @param idleMicros The time the thread waits when there is nothing to read
+     * @usage subscription.start(listener, idleMicros);
+     */
+    public synchronized void start(Listener listener, long idleMicros) {
+      if (thread != null) {
+        return;
+      }
+      thread = new Thread(() -> {
+        while (thread == Thread.currentThread()) {
+          try {
+            if (poll(listener) == 0) {
+              LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(idleMicros));
+            }
+          } catch (RuntimeException e) {
+            e.printStackTrace();
+          }
+        }
+        poll(listener);
+      }, "AdvEventBus-consumer");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    /* Method: close() */
+
+    /**
+     * Removes this subscription from the bus and stops its thread, if it has one, after it has
+     * drained what was published before.
+     *
+     * @usage subscription.close();
+     */
+    public void close() {
+      Thread t;
+      synchronized (this) {
+        t = thread;
+        thread = null;
+      }
+      if (t != null) {
+        LockSupport.unpark(t);
+        try {
+          t.join();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      unsubscribe(this);
+    }
+  }
+}
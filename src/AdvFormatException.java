@@ -0,0 +1,61 @@
+/*
+ * File: AdvFormatException.java
+ * -----------------------------
+ * This file defines the exception thrown when an Adventure data
+ * file is not in the expected format.
+ */
+
+import java.io.IOException;
+
+/* Class: AdvFormatException */
+
+/**
+ * This exception reports an error in one of the data files of a world. The message starts with the
+ * file name and line number, as in "CrowtherObjects.txt:13: ...".
+ */
+
+public class AdvFormatException extends IOException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String fileName;
+  private final int lineNumber;
+
+  /**
+   * Creates an exception for an error at the specified line of a data file.
+   *
+   * @param fileName The name of the data file
+   * @param lineNumber The line number of the error, starting at 1
+   * @param message A description of the error
+   * @usage throw new AdvFormatException(fileName, lineNumber, message);
+   */
+  public AdvFormatException(String fileName, int lineNumber, String message) {
+    super(fileName + ":" + lineNumber + ": " + message);
+    this.fileName = fileName;
+    this.lineNumber = lineNumber;
+  }
+
+  /* Method: getFileName() */
+
+  /**
+   * Returns the name of the data file that contains the error.
+   *
+   * @return The file name
+   * @usage String fileName = e.getFileName();
+   */
+  public String getFileName() {
+    return fileName;
+  }
+
+  /* Method: getLineNumber() */
+
+  /**
+   * Returns the line of the data file at which the error was found.
+   *
+   * @return The line number, starting at 1
+   * @usage int line = e.getLineNumber();
+   */
+  public int getLineNumber() {
+    return lineNumber;
+  }
+}
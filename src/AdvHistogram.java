@@ -0,0 +1,144 @@
+/*
+ * File: AdvHistogram.java
+ * -----------------------
+ * This file defines a lock-free histogram of latencies.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/* Class: AdvHistogram */
+
+/**
+ * This class counts recorded values, normally latencies in nanoseconds, in buckets of the kind used
+ * by HdrHistogram: values below 32 have a bucket each, and every higher power of two is split into
+ * 16 buckets of equal width, so a bucket is never wider than 1/16 of the values it holds. Recording
+ * a value is one atomic increment in an AtomicLongArray and takes no lock, so any number of
+ * threads can record into the same histogram.
+ *
+ * <p>Percentiles are computed from a pass over the buckets while values are still being recorded,
+ * so they are approximate in two ways: to the width of a bucket and to the recordings that happen
+ * during the pass.
+ */
+
+public class AdvHistogram {
+
+  private static final int LINEAR = 32;
+  private static final int SUB_BITS = 4;
+  private static final int SUB = 1 << SUB_BITS;
+  private static final int BUCKETS = LINEAR + (63 - 5) * SUB;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong max = new AtomicLong();
+
+  /* Method: record(value) */
+
+  /**
+   * Adds a value to the histogram. Negative values are counted as 0.
+   *
+   * @param value The value to record
+   * @usage histogram.record(value);
+   */
+  public void record(long value) {
+    long v = Math.max(0, value);
+    counts.incrementAndGet(index(v));
+    long m = max.get();
+    while (v > m && !max.compareAndSet(m, v)) {
+      m = max.get();
+    }
+  }
+
+  /* Method: getCount() */
+
+  /**
+   * Returns the number of values recorded.
+   *
+   * @return The number of values
+   * @usage long n = histogram.getCount();
+   */
+  public long getCount() {
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      total += counts.get(i);
+    }
+    return total;
+  }
+
+  /* Method: getMax() */
+
+  /**
+   * Returns the largest value recorded, or 0 if the histogram is empty.
+   *
+   * @return The largest value
+   * @usage long max = histogram.getMax();
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /* Method: getPercentile(percent) */
+
+  /**
+   * Returns the value below or at which the specified percentage of the recorded values lie. The
+   * result is the highest value of the bucket that contains the percentile, limited by the largest
+   * value recorded.
+   *
+   * @param percent The percentile, between 0 and 100
+   * @return The value at that percentile, or 0 if the histogram is empty
+   * @usage long p99 = histogram.getPercentile(99);
+   */
+  public long getPercentile(double percent) {
+    long[] snapshot = new long[BUCKETS];
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percent / 100 * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(highestValue(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  /* Method: reset() */
+
+  /**
+   * Empties the histogram.
+   *
+   * @usage histogram.reset();
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    max.set(0);
+  }
+
+  // the bucket of a value that is not negative
+  private static int index(long v) {
+    if (v < LINEAR) {
+      return (int) v;
+    }
+    int exp = 63 - Long.numberOfLeadingZeros(v);
+    return LINEAR + (exp - 5) * SUB + (int) ((v >>> (exp - SUB_BITS)) & (SUB - 1));
+  }
+
+  // the highest value that falls into a bucket
+  private static long highestValue(int index) {
+    if (index < LINEAR) {
+      return index;
+    }
+    int exp = (index - LINEAR) / SUB + 5;
+    long sub = (index - LINEAR) % SUB;
+    long lowest = (SUB + sub) << (exp - SUB_BITS);
+    return lowest + (1L << (exp - SUB_BITS)) - 1;
+  }
+}
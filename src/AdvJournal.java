@@ -0,0 +1,357 @@
+/*
+ * File: AdvJournal.java
+ * ---------------------
+ * This file defines the write-ahead journal that lets an Adventure
+ * session survive a crash.
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/* Class: AdvJournal */
+
+/**
+ * This class keeps an append-only journal of the commands executed by one session, together with
+ * periodic snapshots of its state. Restoring a session loads the newest snapshot and replays only
+ * the commands journaled after it, so the time needed to restore depends on the snapshot interval
+ * and not on how long the session has been running.
+ *
+ * <p>The files of a session live in one directory and are named after the session id:
+ *
+ * <ul>
+ * <li>id-N.snap holds the snapshot taken after N commands
+ * <li>id-N.log holds the commands starting with command number N
+ * </li>
+ *
+ * Every snapshot starts a new log segment, and the segments and snapshots it replaces are
+ * deleted once the snapshot, its new segment and the directory entries of both are forced to
+ * disk. Each journal record is a length, the UTF-8 bytes of the command and a CRC32, so a
+ * record torn by a crash is recognized and ignored.
+ *
+ * <p>Records are group-committed: they are collected in memory and written and forced to disk
+ * together once groupSize records are waiting or the oldest one has waited maxDelayMillis. The
+ * delay is enforced by a timer on a shared daemon thread, so the last commands of a session that
+ * goes idle reach the disk without another command or a call to commit.
+ */
+
+public class AdvJournal implements Closeable {
+
+  // commits the groups whose oldest record has waited maxDelayMillis, for every journal
+  private static final ScheduledExecutorService COMMITTER =
+      Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "AdvJournal-commit");
+        t.setDaemon(true);
+        return t;
+      });
+
+  private final Path dir;
+  private final String sessionId;
+  private final int groupSize;
+  private final long maxDelayNanos;
+  private final int snapshotInterval;
+  private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+  private final DataOutputStream pendingOut = new DataOutputStream(pending);
+  private final CRC32 crc = new CRC32();
+  private int pendingCount;
+  private long pendingSince;
+  private long sequence;
+  private FileChannel log;
+
+  /**
+   * Creates a journal for the session with the specified id. Nothing is read or written until
+   * restore or step is called.
+   *
+   * @param dir The directory that holds the files of the session
+   * @param sessionId The id of the session, used as the prefix of its file names
+   * @param groupSize The number of records written to disk together
+   * @param maxDelayMillis The longest time a record waits for its group
+   * @param snapshotInterval The number of commands between snapshots
+   * @usage AdvJournal journal = new AdvJournal(dir, id, groupSize, maxDelay, interval);
+   */
+  public AdvJournal(Path dir, String sessionId, int groupSize, long maxDelayMillis,
+      int snapshotInterval) {
+    this.dir = dir;
+    this.sessionId = sessionId;
+    this.groupSize = Math.max(1, groupSize);
+    this.maxDelayNanos = maxDelayMillis * 1000000L;
+    this.snapshotInterval = Math.max(1, snapshotInterval);
+  }
+
+  /* Method: restore(world) */
+
+  /**
+   * Rebuilds the session from its files: the newest readable snapshot is restored and the
+   * journaled commands that follow it are replayed. Returns null if the session has no files, in
+   * which case the caller starts a new game.
+   *
+   * @param world The world the session plays in
+   * @return The restored game, or null if there is nothing to restore
+   * @usage Adventure game = journal.restore(world);
+   */
+  public synchronized Adventure restore(AdvWorld world) throws IOException {
+    Files.createDirectories(dir);
+    List<Long> snapshots = list(".snap");
+    List<Long> segments = list(".log");
+    if (snapshots.isEmpty() && segments.isEmpty()) {
+      return null;
+    }
+    // the output of the replayed turns is collected and then thrown away
+    AdvByteArrayOutput replayed = new AdvByteArrayOutput();
+    Adventure game = new Adventure(world, replayed);
+    game.start();
+    sequence = 0;
+    for (int i = snapshots.size() - 1; i >= 0; i--) {
+      try (InputStream in = Files.newInputStream(path(snapshots.get(i), ".snap"))) {
+        AdvSnapshot snapshot = AdvSnapshot.read(in);
+        game.restoreState(snapshot);
+        sequence = snapshot.getSequence();
+        break;
+      } catch (IOException e) {
+        // an unreadable snapshot is skipped in favor of an older one
+      }
+    }
+    for (long start : segments) {
+      if (start > sequence + 1) {
+        break;
+      }
+      replay(game, start);
+    }
+    replayed.reset();
+    openSegment();
+    return game;
+  }
+
+  /* Method: step(game, input) */
+
+  /**
+   * Executes one line of input and journals it; the game writes its output to its own sink. A
+   * snapshot is taken every snapshotInterval commands.
+   *
+   * @param game The game of this session
+   * @param input The line typed by the player
+   * @usage journal.step(game, input);
+   */
+  public synchronized void step(Adventure game, String input) throws IOException {
+    if (log == null) {
+      Files.createDirectories(dir);
+      openSegment();
+    }
+    game.step(input);
+    append(input);
+    if (sequence % snapshotInterval == 0) {
+      snapshot(game);
+    }
+  }
+
+  /* Method: getSequence() */
+
+  /**
+   * Returns the number of commands the session has executed.
+   *
+   * @return The command count
+   * @usage long n = journal.getSequence();
+   */
+  public synchronized long getSequence() {
+    return sequence;
+  }
+
+  /* Method: commit() */
+
+  /**
+   * Writes every waiting record to the journal and forces it to disk.
+   *
+   * @usage journal.commit();
+   */
+  public synchronized void commit() throws IOException {
+    if (pendingCount == 0) {
+      return;
+    }
+    ByteBuffer bytes = ByteBuffer.wrap(pending.toByteArray());
+    while (bytes.hasRemaining()) {
+      log.write(bytes);
+    }
+    log.force(false);
+    pending.reset();
+    pendingCount = 0;
+  }
+
+  /* Method: snapshot(game) */
+
+  /**
+   * Commits the journal, writes a snapshot of the game and starts a new log segment. Older
+   * snapshots and segments are deleted.
+   *
+   * @param game The game of this session
+   * @usage journal.snapshot(game);
+   */
+  public synchronized void snapshot(Adventure game) throws IOException {
+    commit();
+    Path target = path(sequence, ".snap");
+    Path tmp = dir.resolve(target.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+      game.saveState().withSequence(sequence).write(out);
+      out.flush();
+      channel.force(true);
+    }
+    Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    openSegment();
+    // the new snapshot and segment must be on disk before the files they replace are deleted
+    syncDirectory();
+    for (long seq : list(".snap")) {
+      if (seq < sequence) {
+        Files.deleteIfExists(path(seq, ".snap"));
+      }
+    }
+    for (long start : list(".log")) {
+      if (start <= sequence) {
+        Files.deleteIfExists(path(start, ".log"));
+      }
+    }
+  }
+
+  // forces the entries of the directory to disk, where the platform allows opening a directory
+  private void syncDirectory() throws IOException {
+    FileChannel channel;
+    try {
+      channel = FileChannel.open(dir, StandardOpenOption.READ);
+    } catch (IOException e) {
+      // Windows cannot open a directory; its renames are durable once they return
+      return;
+    }
+    try (FileChannel c = channel) {
+      c.force(true);
+    }
+  }
+
+  /* Method: close() */
+
+  /**
+   * Commits the waiting records and closes the journal.
+   *
+   * @usage journal.close();
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (log != null) {
+      commit();
+      log.close();
+      log = null;
+    }
+  }
+
+  private void append(String input) throws IOException {
+    byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+    crc.reset();
+    crc.update(bytes);
+    pendingOut.writeInt(bytes.length);
+    pendingOut.write(bytes);
+    pendingOut.writeInt((int) crc.getValue());
+    sequence++;
+    if (pendingCount++ == 0) {
+      pendingSince = System.nanoTime();
+    }
+    if (pendingCount >= groupSize || System.nanoTime() - pendingSince >= maxDelayNanos) {
+      commit();
+    } else if (pendingCount == 1) {
+      long group = pendingSince;
+      COMMITTER.schedule(() -> commitLate(group), maxDelayNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  // commits the group started at the specified time if it is still waiting
+  private synchronized void commitLate(long group) {
+    if (pendingCount == 0 || pendingSince != group || log == null) {
+      return;
+    }
+    try {
+      commit();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  // starts the log segment whose first record is the next command
+  private void openSegment() throws IOException {
+    if (log != null) {
+      log.close();
+    }
+    log = FileChannel.open(path(sequence + 1, ".log"), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  private void replay(Adventure game, long start) throws IOException {
+    long seq = start;
+    for (String input : readRecords(start)) {
+      if (seq > sequence) {
+        game.step(input);
+        sequence = seq;
+      }
+      seq++;
+    }
+  }
+
+  // reads the valid records of a segment, stopping at the first torn or corrupt one
+  private List<String> readRecords(long start) throws IOException {
+    ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path(start, ".log")));
+    List<String> records = new ArrayList<>();
+    while (data.remaining() >= 8) {
+      int length = data.getInt();
+      if (length < 0 || data.remaining() < length + 4) {
+        break;
+      }
+      byte[] bytes = new byte[length];
+      data.get(bytes);
+      crc.reset();
+      crc.update(bytes);
+      if (data.getInt() != (int) crc.getValue()) {
+        break;
+      }
+      records.add(new String(bytes, StandardCharsets.UTF_8));
+    }
+    return records;
+  }
+
+  private Path path(long seq, String suffix) {
+    return dir.resolve(String.format("%s-%016d%s", sessionId, seq, suffix));
+  }
+
+  // the sequence numbers in the names of the session files with the specified suffix, in order
+  private List<Long> list(String suffix) throws IOException {
+    List<Long> result = new ArrayList<>();
+    String prefix = sessionId + "-";
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, prefix + "*" + suffix)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        String number = name.substring(prefix.length(), name.length() - suffix.length());
+        if (number.length() == 16 && number.chars().allMatch(Character::isDigit)) {
+          result.add(Long.parseLong(number));
+        }
+      }
+    }
+    Collections.sort(result);
+    return result;
+  }
+}
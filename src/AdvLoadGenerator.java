@@ -0,0 +1,420 @@
+/*
+ * File: AdvLoadGenerator.java
+ * ---------------------------
+ * This program plays many games at once in one JVM and measures
+ * how many players it sustains.
+ */
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/* Class: AdvLoadGenerator */
+
+/**
+ * This class is a closed-loop load generator. It starts a number of simulated players, each with a
+ * game of its own, and every player repeatedly picks a command, plays it, and then thinks for a
+ * while before the next one, so the load grows with the number of players rather than with the
+ * speed of the game. A player whose game ends starts a new one.
+ *
+ * <p>A player picks a command according to the mix: a move in one of the directions of the
+ * motion table of its room, TAKE of an object in the room, DROP of an object it carries, LOOK or
+ * INVENTORY. TAKE and DROP fall back to LOOK when there is nothing to take or drop. The output of
+ * the games is encoded as usual and then thrown away.
+ *
+ * <p>The players run on a fixed pool of threads, which schedules the next turn of a player when
+ * its think time is over, or, with -threads 0, each on a virtual thread of its own when the JVM
+ * has them. The latency of a turn is measured from the time the turn was due, not from the time a
+ * thread got to it, so time spent waiting for an overloaded pool is counted rather than hidden.
+ * For every number of players the tool reports the commands per second, the latency percentiles,
+ * and the collections, collection time and allocation rate of the garbage collector over the
+ * measured interval.
+ *
+ * <p>Usage: java AdvLoadGenerator [options] name, with the options
+ *
+ * <ul>
+ * <li>-players n,n,..., the numbers of players to measure in turn (default 1,10,100,1000)
+ * <li>-threads n, the size of the pool, or 0 for virtual threads (default the number of
+ * processors)
+ * <li>-think millis, the mean think time of a player, drawn uniformly from 0 to twice the mean
+ * (default 10)
+ * <li>-mix move,take,drop,look,inventory, the relative weights of the commands (default
+ * 60,10,10,15,5)
+ * <li>-time seconds, the measured time for each number of players (default 10)
+ * <li>-warmup seconds, the time each number of players runs before it is measured (default 2)
+ * <li>-seed n, the seed of the players (default 1)
+ * </li>
+ */
+
+public class AdvLoadGenerator {
+
+  private static final String[] MIX_NAMES = {"move", "take", "drop", "look", "inventory"};
+
+  private final AdvWorld world;
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private long thinkNanos = 10000000L;
+  private int[] mix = {60, 10, 10, 15, 5};
+  private long seed = 1;
+
+  private final AdvHistogram latency = new AdvHistogram();
+  private final LongAdder commands = new LongAdder();
+  private volatile boolean running;
+
+  /**
+   * Creates a load generator for a world.
+   *
+   * @param world The world the players play
+   * @usage AdvLoadGenerator generator = new AdvLoadGenerator(world);
+   */
+  public AdvLoadGenerator(AdvWorld world) {
+    this.world = world;
+  }
+
+  /* Private class: Player */
+
+  /**
+   * This class is one simulated player. Its turns never overlap, so it needs no locking even when
+   * successive turns run on different threads.
+   */
+
+  private class Player implements Runnable {
+
+    private final SplittableRandom random;
+    private final ScheduledExecutorService scheduler;
+    private Adventure game;
+    private long due;
+
+    Player(SplittableRandom random, ScheduledExecutorService scheduler) {
+      this.random = random;
+      this.scheduler = scheduler;
+      newGame();
+      due = System.nanoTime() + think();
+    }
+
+    private void newGame() {
+      game = new Adventure(world, new Sink());
+      game.start();
+    }
+
+    private long think() {
+      return (thinkNanos == 0) ? 0 : random.nextLong(2 * thinkNanos);
+    }
+
+    // plays one turn and returns the time the next one is due
+    long turn() {
+      game.step(pickCommand());
+      long now = System.nanoTime();
+      if (running) {
+        latency.record(now - due);
+        commands.increment();
+      }
+      if (!game.isGameOn()) {
+        newGame();
+      }
+      due = now + think();
+      return due;
+    }
+
+    // the fixed-pool driver: one turn, then the next is scheduled after the think time
+    @Override
+    public void run() {
+      try {
+        long next = turn();
+        if (!scheduler.isShutdown()) {
+          scheduler.schedule(this, next - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+      } catch (RuntimeException e) {
+        if (!scheduler.isShutdown()) {
+          e.printStackTrace();
+        }
+      }
+    }
+
+    // the virtual-thread driver: the player sleeps through its think time
+    void loop(long deadline) {
+      try {
+        while (System.nanoTime() < deadline) {
+          long wait = due - System.nanoTime();
+          if (wait > 0) {
+            Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+          }
+          turn();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private String pickCommand() {
+      AdvRoom room = game.getCurrentRoom();
+      AdvObjectLocations locations = game.getLocations();
+      switch (pickKind()) {
+        case 1:
+          List<AdvObject> here = locations.getObjectsIn(
+              world.getGraph().getRoomIndex(room.getRoomNumber()));
+          if (!here.isEmpty()) {
+            return "TAKE " + here.get(random.nextInt(here.size())).getName();
+          }
+          return "LOOK";
+        case 2:
+          List<AdvObject> carried = locations.getObjectsIn(AdvObjectLocations.CARRIED);
+          if (!carried.isEmpty()) {
+            return "DROP " + carried.get(random.nextInt(carried.size())).getName();
+          }
+          return "LOOK";
+        case 3:
+          return "LOOK";
+        case 4:
+          return "INVENTORY";
+        default:
+          AdvMotionTableEntry[] table = room.getMotionTable();
+          return table[random.nextInt(table.length)].getDirection();
+      }
+    }
+
+    private int pickKind() {
+      int total = 0;
+      for (int weight : mix) {
+        total += weight;
+      }
+      int roll = random.nextInt(total);
+      for (int kind = 0; kind < mix.length; kind++) {
+        roll -= mix[kind];
+        if (roll < 0) {
+          return kind;
+        }
+      }
+      return 0;
+    }
+  }
+
+  /* Private class: Sink */
+
+  /**
+   * This class is the output of a simulated game, which is encoded and then dropped.
+   */
+
+  private static class Sink extends AdvOutput {
+
+    @Override
+    protected void emit(byte[] bytes, int offset, int count) {
+      // nobody reads the output of a simulated player
+    }
+  }
+
+  /* Method: run(players, warmupMillis, measureMillis) */
+
+  /**
+   * Runs the specified number of players, first for the warm-up time and then for the measured
+   * time, and prints one line of results.
+   *
+   * @param players The number of players
+   * @param warmupMillis The time the players run before they are measured
+   * @param measureMillis The measured time
+   * @usage generator.run(players, warmupMillis, measureMillis);
+   */
+  public void run(int players, long warmupMillis, long measureMillis) throws Exception {
+    latency.reset();
+    commands.reset();
+    running = false;
+    ExecutorService virtual = (threads == 0) ? newVirtualThreadExecutor() : null;
+    ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+        (virtual == null) ? Math.max(1, threads) : 1);
+    SplittableRandom random = new SplittableRandom(seed);
+    long start = System.nanoTime();
+    long deadline = start + (warmupMillis + measureMillis) * 1000000L;
+    for (int i = 0; i < players; i++) {
+      Player player = new Player(random.split(), scheduler);
+      if (virtual != null) {
+        virtual.execute(() -> player.loop(deadline));
+      } else {
+        scheduler.schedule(player, player.due - System.nanoTime(), TimeUnit.NANOSECONDS);
+      }
+    }
+
+    Thread.sleep(Math.max(0, warmupMillis - (System.nanoTime() - start) / 1000000L));
+    long gcCount = gcCount();
+    long gcMillis = gcMillis();
+    long allocated = allocatedBytes();
+    long measureStart = System.nanoTime();
+    running = true;
+    Thread.sleep(measureMillis);
+    running = false;
+    long elapsed = System.nanoTime() - measureStart;
+    gcCount = gcCount() - gcCount;
+    gcMillis = gcMillis() - gcMillis;
+    allocated = allocatedBytes() - allocated;
+
+    scheduler.shutdownNow();
+    if (virtual != null) {
+      virtual.shutdown();
+    }
+    scheduler.awaitTermination(10, TimeUnit.SECONDS);
+    if (virtual != null) {
+      virtual.awaitTermination(10, TimeUnit.SECONDS);
+    }
+    System.out.printf("%8d %12.1f %10.3f %10.3f %10.3f %10.3f %8d %8d %10.1f%n", players,
+        commands.sum() * 1e9 / elapsed, latency.getPercentile(50) / 1e6,
+        latency.getPercentile(90) / 1e6, latency.getPercentile(99) / 1e6,
+        latency.getMax() / 1e6, gcCount, gcMillis, allocated * 1e3 / elapsed);
+  }
+
+  // a virtual thread per task; these exist from Java 21 on, and the tree builds with Java 17
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Virtual threads are not available", e);
+    }
+  }
+
+  private static boolean hasVirtualThreads() {
+    try {
+      Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  private static long gcCount() {
+    long total = 0;
+    for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+      total += Math.max(0, bean.getCollectionCount());
+    }
+    return total;
+  }
+
+  private static long gcMillis() {
+    long total = 0;
+    for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+      total += Math.max(0, bean.getCollectionTime());
+    }
+    return total;
+  }
+
+  // the bytes allocated so far by all live platform threads
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+      return 0;
+    }
+    long total = 0;
+    for (long bytes : ((com.sun.management.ThreadMXBean) bean)
+        .getThreadAllocatedBytes(bean.getAllThreadIds())) {
+      total += Math.max(0, bytes);
+    }
+    return total;
+  }
+
+  /**
+   * Runs the load described by the command line and prints a table of results.
+   */
+  public static void main(String[] args) throws Exception {
+    List<Integer> players = new ArrayList<>();
+    int threads = Runtime.getRuntime().availableProcessors();
+    long think = 10;
+    int[] mix = null;
+    long seconds = 10;
+    long warmup = 2;
+    long seed = 1;
+    String name = null;
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "-players":
+          for (String n : args[++i].split(",")) {
+            players.add(Integer.parseInt(n.trim()));
+          }
+          break;
+        case "-threads":
+          threads = Integer.parseInt(args[++i]);
+          break;
+        case "-think":
+          think = Long.parseLong(args[++i]);
+          break;
+        case "-mix":
+          mix = parseMix(args[++i]);
+          break;
+        case "-time":
+          seconds = Long.parseLong(args[++i]);
+          break;
+        case "-warmup":
+          warmup = Long.parseLong(args[++i]);
+          break;
+        case "-seed":
+          seed = Long.parseLong(args[++i]);
+          break;
+        default:
+          name = args[i];
+          break;
+      }
+    }
+    if (name == null) {
+      System.out.println("Usage: java AdvLoadGenerator [options] name");
+      return;
+    }
+    if (players.isEmpty()) {
+      players.add(1);
+      players.add(10);
+      players.add(100);
+      players.add(1000);
+    }
+
+    if (threads == 0 && !hasVirtualThreads()) {
+      System.out.println("Virtual threads are not available; using a fixed pool");
+      threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    AdvLoadGenerator generator = new AdvLoadGenerator(AdvWorldCache.getShared().get(name));
+    generator.threads = threads;
+    generator.thinkNanos = think * 1000000L;
+    generator.seed = seed;
+    if (mix != null) {
+      generator.mix = mix;
+    }
+    System.out.printf("%s on %s, think time %d ms, mix %s%n", name,
+        (threads == 0) ? "virtual threads" : threads + " threads", think,
+        describeMix(generator.mix));
+    System.out.printf("%8s %12s %10s %10s %10s %10s %8s %8s %10s%n", "players", "commands/s",
+        "p50 ms", "p90 ms", "p99 ms", "max ms", "GCs", "GC ms", "alloc MB/s");
+    for (int n : players) {
+      generator.run(n, warmup * 1000, seconds * 1000);
+    }
+  }
+
+  private static int[] parseMix(String text) {
+    String[] parts = text.split(",");
+    if (parts.length != MIX_NAMES.length) {
+      throw new IllegalArgumentException("The mix needs " + MIX_NAMES.length + " weights");
+    }
+    int[] mix = new int[parts.length];
+    int total = 0;
+    for (int i = 0; i < parts.length; i++) {
+      mix[i] = Integer.parseInt(parts[i].trim());
+      if (mix[i] < 0) {
+        throw new IllegalArgumentException("Negative weight for " + MIX_NAMES[i]);
+      }
+      total += mix[i];
+    }
+    if (total == 0) {
+      throw new IllegalArgumentException("The mix has no weight");
+    }
+    return mix;
+  }
+
+  private static String describeMix(int[] mix) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < mix.length; i++) {
+      sb.append((i == 0) ? "" : " ").append(MIX_NAMES[i]).append('=').append(mix[i]);
+    }
+    return sb.toString();
+  }
+}
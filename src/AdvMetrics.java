@@ -0,0 +1,321 @@
+/*
+ * File: AdvMetrics.java
+ * ---------------------
+ * This file defines the metrics recorded while games are played in
+ * an Adventure world.
+ */
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/* Class: AdvMetrics */
+
+/**
+ * This class collects metrics from every game played in one world: a latency histogram per verb,
+ * counters for unknown commands, failed moves and failed key checks, and the number of times each
+ * room was entered. Games record into it through Adventure.setMetrics, or all the sessions of an
+ * engine created with AdvEngine(world, metrics); a game without metrics records nothing and pays
+ * nothing but a null check.
+ *
+ * <p>Recording takes no locks. Histograms are AdvHistogram instances created on first use, the
+ * counters are LongAdders, and the room counters are striped: each thread increments the slot of
+ * a room in one of several AtomicLongArrays chosen by its thread id, so threads whose players
+ * crowd into the same room do not fight over one cache line. The stripes are summed when the
+ * counts are read.
+ *
+ * <p>The metrics are published as an MXBean named Adventure:type=Metrics,world=name by register,
+ * and printed periodically by startDump.
+ */
+
+public class AdvMetrics implements AdvMetricsMXBean {
+
+  private static final int TOP_ROOMS = 10;
+
+  private final AdvWorld world;
+  private final AtomicReferenceArray<AdvHistogram> verbs;
+  private final LongAdder commands = new LongAdder();
+  private final LongAdder unknownCommands = new LongAdder();
+  private final LongAdder failedMoves = new LongAdder();
+  private final LongAdder failedKeyChecks = new LongAdder();
+  private final AtomicLongArray[] roomStripes;
+  private ScheduledExecutorService dumper;
+
+  /**
+   * Creates an empty set of metrics for the specified world.
+   *
+   * @param world The world whose games are measured
+   * @usage AdvMetrics metrics = new AdvMetrics(world);
+   */
+  public AdvMetrics(AdvWorld world) {
+    this.world = world;
+    this.verbs = new AtomicReferenceArray<>(world.getVocabulary().size());
+    int stripes = Integer.highestOneBit(Math.min(16,
+        Math.max(1, Runtime.getRuntime().availableProcessors())));
+    roomStripes = new AtomicLongArray[stripes];
+    for (int i = 0; i < stripes; i++) {
+      roomStripes[i] = new AtomicLongArray(world.getGraph().getRoomCount());
+    }
+  }
+
+  /* Recording methods */
+
+  /**
+   * Records the execution of a command.
+   *
+   * @param token The token of the verb
+   * @param nanos The time the command took
+   * @usage metrics.recordCommand(token, nanos);
+   */
+  public void recordCommand(int token, long nanos) {
+    commands.increment();
+    AdvHistogram histogram = verbs.get(token);
+    if (histogram == null) {
+      verbs.compareAndSet(token, null, new AdvHistogram());
+      histogram = verbs.get(token);
+    }
+    histogram.record(nanos);
+  }
+
+  /**
+   * Records a command whose first word is not a verb or a direction.
+   *
+   * @usage metrics.recordUnknownCommand();
+   */
+  public void recordUnknownCommand() {
+    commands.increment();
+    unknownCommands.increment();
+  }
+
+  /**
+   * Records a move that failed, either because the room has no exit in that direction or because
+   * every such exit needs a key the player does not carry.
+   *
+   * @param locked true if an exit exists but is locked
+   * @usage metrics.recordFailedMove(locked);
+   */
+  public void recordFailedMove(boolean locked) {
+    if (locked) {
+      failedKeyChecks.increment();
+    } else {
+      failedMoves.increment();
+    }
+  }
+
+  /**
+   * Records that a player entered a room.
+   *
+   * @param room The dense index of the room
+   * @usage metrics.recordRoomEntry(room);
+   */
+  public void recordRoomEntry(int room) {
+    int stripe = (int) Thread.currentThread().getId() & (roomStripes.length - 1);
+    roomStripes[stripe].incrementAndGet(room);
+  }
+
+  /* Method: getHistogram(verb) */
+
+  /**
+   * Returns the latency histogram of a verb, or null if the verb has not been executed.
+   *
+   * @param verb The verb, in its canonical spelling
+   * @return The histogram of the verb, or null
+   * @usage AdvHistogram histogram = metrics.getHistogram(verb);
+   */
+  public AdvHistogram getHistogram(String verb) {
+    int token = world.getVocabulary().lookup(verb);
+    return (token < 0) ? null : verbs.get(token);
+  }
+
+  /* Method: getRoomEntries(room) */
+
+  /**
+   * Returns the number of times players entered a room.
+   *
+   * @param room The dense index of the room
+   * @return The number of entries
+   * @usage long n = metrics.getRoomEntries(room);
+   */
+  public long getRoomEntries(int room) {
+    long total = 0;
+    for (AtomicLongArray stripe : roomStripes) {
+      total += stripe.get(room);
+    }
+    return total;
+  }
+
+  @Override
+  public long getCommands() {
+    return commands.sum();
+  }
+
+  @Override
+  public long getUnknownCommands() {
+    return unknownCommands.sum();
+  }
+
+  @Override
+  public long getFailedMoves() {
+    return failedMoves.sum();
+  }
+
+  @Override
+  public long getFailedKeyChecks() {
+    return failedKeyChecks.sum();
+  }
+
+  @Override
+  public Map<String, Long> getVerbCounts() {
+    return verbMap(AdvHistogram::getCount);
+  }
+
+  @Override
+  public Map<String, Long> getVerbP50Nanos() {
+    return verbMap(h -> h.getPercentile(50));
+  }
+
+  @Override
+  public Map<String, Long> getVerbP99Nanos() {
+    return verbMap(h -> h.getPercentile(99));
+  }
+
+  @Override
+  public Map<String, Long> getVerbMaxNanos() {
+    return verbMap(AdvHistogram::getMax);
+  }
+
+  @Override
+  public Map<Integer, Long> getHottestRooms() {
+    int count = world.getGraph().getRoomCount();
+    List<long[]> entries = new ArrayList<>();
+    for (int room = 0; room < count; room++) {
+      long n = getRoomEntries(room);
+      if (n > 0) {
+        entries.add(new long[] {room, n});
+      }
+    }
+    entries.sort((a, b) -> Long.compare(b[1], a[1]));
+    Map<Integer, Long> result = new LinkedHashMap<>();
+    for (long[] e : entries.subList(0, Math.min(TOP_ROOMS, entries.size()))) {
+      result.put(world.getGraph().getRoom((int) e[0]).getRoomNumber(), e[1]);
+    }
+    return result;
+  }
+
+  private Map<String, Long> verbMap(ToLongFunction<AdvHistogram> value) {
+    Map<String, Long> result = new TreeMap<>();
+    for (int token = 0; token < verbs.length(); token++) {
+      AdvHistogram histogram = verbs.get(token);
+      if (histogram != null) {
+        result.put(world.getVocabulary().getWord(token), value.applyAsLong(histogram));
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public String dump() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("world %s: %d commands, %d unknown, %d failed moves,"
+        + " %d failed key checks%n", world.getName(), getCommands(), getUnknownCommands(),
+        getFailedMoves(), getFailedKeyChecks()));
+    for (int token = 0; token < verbs.length(); token++) {
+      AdvHistogram h = verbs.get(token);
+      if (h != null) {
+        sb.append(String.format("  %-12s %10d  p50 %9.1f us  p90 %9.1f us  p99 %9.1f us"
+            + "  max %9.1f us%n", world.getVocabulary().getWord(token), h.getCount(),
+            h.getPercentile(50) / 1e3, h.getPercentile(90) / 1e3, h.getPercentile(99) / 1e3,
+            h.getMax() / 1e3));
+      }
+    }
+    sb.append("  hottest rooms ").append(getHottestRooms()).append(String.format("%n"));
+    return sb.toString();
+  }
+
+  @Override
+  public void reset() {
+    for (int token = 0; token < verbs.length(); token++) {
+      AdvHistogram h = verbs.get(token);
+      if (h != null) {
+        h.reset();
+      }
+    }
+    commands.reset();
+    unknownCommands.reset();
+    failedMoves.reset();
+    failedKeyChecks.reset();
+    for (AtomicLongArray stripe : roomStripes) {
+      for (int i = 0; i < stripe.length(); i++) {
+        stripe.set(i, 0);
+      }
+    }
+  }
+
+  /* Method: register() */
+
+  /**
+   * Publishes these metrics on the platform MBean server as Adventure:type=Metrics,world=name.
+   *
+   * @return The name the metrics were registered under
+   * @usage ObjectName name = metrics.register();
+   */
+  public ObjectName register() throws JMException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("Adventure:type=Metrics,world="
+        + ObjectName.quote(world.getName()));
+    if (server.isRegistered(name)) {
+      server.unregisterMBean(name);
+    }
+    server.registerMBean(this, name);
+    return name;
+  }
+
+  /* Method: startDump(out, periodSeconds) */
+
+  /**
+   * Prints the metrics to a stream every periodSeconds seconds from a daemon thread, until
+   * stopDump is called.
+   *
+   * @param out The stream to print to
+   * @param periodSeconds The time between dumps
+   * @usage metrics.startDump(System.err, 60);
+   */
+  public synchronized void startDump(PrintStream out, long periodSeconds) {
+    stopDump();
+    dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "AdvMetrics-dump");
+      t.setDaemon(true);
+      return t;
+    });
+    dumper.scheduleAtFixedRate(() -> out.print(dump()), periodSeconds, periodSeconds,
+        TimeUnit.SECONDS);
+  }
+
+  /* Method: stopDump() */
+
+  /**
+   * Stops the periodic dump started by startDump.
+   *
+   * @usage metrics.stopDump();
+   */
+  public synchronized void stopDump() {
+    if (dumper != null) {
+      dumper.shutdownNow();
+      dumper = null;
+    }
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * File: AdvMetricsMXBean.java
+ * ---------------------------
+ * This file defines the management interface through which the
+ * metrics of an Adventure world are published over JMX.
+ */
+
+import java.util.Map;
+
+/* Interface: AdvMetricsMXBean */
+
+/**
+ * This interface is the JMX view of an AdvMetrics instance. Latencies are in nanoseconds, and maps
+ * are keyed by the canonical spelling of the verb or, for rooms, by the room number.
+ */
+
+public interface AdvMetricsMXBean {
+
+  /**
+   * Returns the number of commands executed, including unknown ones.
+   */
+  long getCommands();
+
+  /**
+   * Returns the number of commands answered with "Command not found" because the first word is
+   * neither a verb nor a direction of the world.
+   */
+  long getUnknownCommands();
+
+  /**
+   * Returns the number of moves in a direction the current room has no exit for.
+   */
+  long getFailedMoves();
+
+  /**
+   * Returns the number of moves refused because the exit needs an object the player does not
+   * carry.
+   */
+  long getFailedKeyChecks();
+
+  /**
+   * Returns the number of times each verb was executed.
+   */
+  Map<String, Long> getVerbCounts();
+
+  /**
+   * Returns the median latency of each verb.
+   */
+  Map<String, Long> getVerbP50Nanos();
+
+  /**
+   * Returns the 99th percentile latency of each verb.
+   */
+  Map<String, Long> getVerbP99Nanos();
+
+  /**
+   * Returns the largest latency of each verb.
+   */
+  Map<String, Long> getVerbMaxNanos();
+
+  /**
+   * Returns the rooms entered most often with their entry counts.
+   */
+  Map<Integer, Long> getHottestRooms();
+
+  /**
+   * Returns all the metrics as text.
+   */
+  String dump();
+
+  /**
+   * Sets every metric back to zero.
+   */
+  void reset();
+}
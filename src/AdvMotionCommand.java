@@ -10,6 +10,7 @@ public class AdvMotionCommand extends AdvCommand {
   /* Constructor: AdvMotionCommand(dir) */
 
   private String direction;
+  private int directionId = -1;
 
   /* Method: execute(adv, obj) */
 
@@ -23,6 +24,19 @@ public class AdvMotionCommand extends AdvCommand {
     direction = dir;
   }
 
+  /**
+   * Creates a new AdvMotionCommand for a direction that has already been interned in the motion
+   * graph of a world. Such a command is shared by every game on that world.
+   *
+   * @param dir The string corresponding to the direction of motion
+   * @param id The direction token of dir in the motion graph
+   * @usage command = new AdvMotionCommand(dir, id);
+   */
+  public AdvMotionCommand(String dir, int id) {
+    direction = dir;
+    directionId = id;
+  }
+
   /* Private instance variables */
 
   /**
@@ -31,6 +45,10 @@ public class AdvMotionCommand extends AdvCommand {
    * with the stored direction.
    */
   public void execute(Adventure game, AdvObject obj) {
-    game.executeMotionCommand(direction);
+    if (directionId >= 0) {
+      game.executeMotionCommand(directionId);
+    } else {
+      game.executeMotionCommand(direction);
+    }
   }
 }
@@ -0,0 +1,400 @@
+/*
+ * File: AdvMotionGraph.java
+ * -------------------------
+ * This file defines the compiled form of the motion tables of all
+ * the rooms in a world.
+ */
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/* Class: AdvMotionGraph */
+
+/**
+ * This class stores the motion tables of every room of a world as one compressed-sparse-row graph.
+ * Rooms are numbered densely from 0 in increasing room-number order, directions are interned to
+ * small integer tokens, and the entries of room i occupy positions start[i] to start[i + 1] - 1 of
+ * three parallel arrays holding the direction token, the destination room index and the id of the
+ * key object. Resolving a move is therefore a short scan over int arrays and a bit test on the set
+ * of objects the player carries.
+ *
+ * <p>FORCED exits are resolved when the graph is built. A forced room whose first FORCED exit
+ * needs no key always leads to the same room, which is stored directly, and following those exits
+ * from room to room gives a chain whose last room is stored as well. A chain of keyless FORCED
+ * exits that loops back on itself would move the player forever, so it is rejected.
+ */
+
+public class AdvMotionGraph {
+
+  /**
+   * The destination index of an exit that leads to room 0, which ends the game
+   */
+  public static final int END = -1;
+
+  /**
+   * The key id of an exit that needs no key
+   */
+  public static final int NO_KEY = -1;
+
+  /**
+   * The result of findForcedDestination when no FORCED exit of a room can be taken
+   */
+  public static final int NO_EXIT = -2;
+
+  // values of forcedTarget for rooms without a keyless first FORCED exit
+  private static final int KEYED = -2;
+  private static final int NOT_FORCED = -3;
+
+  private final AdvRoom[] rooms;
+  private final Map<Integer, Integer> roomIndex = new HashMap<>();
+  private final Map<String, Integer> directionIds = new HashMap<>();
+  private final String[] directionNames;
+  private final int[] start;
+  private final int[] direction;
+  private final int[] destination;
+  private final int[] key;
+  private final int forced;
+  private final int[] forcedTarget;
+  private final int[] chainEnd;
+
+  /**
+   * Compiles the motion tables of the specified rooms. Key names that do not match any object get
+   * an id that no player can ever carry, so those exits stay locked.
+   *
+   * @param rooms The rooms of the world, keyed by room number
+   * @param objects The objects of the world, in id order
+   * @usage AdvMotionGraph graph = new AdvMotionGraph(rooms, objects);
+   */
+  public AdvMotionGraph(SortedMap<Integer, AdvRoom> rooms, List<AdvObject> objects) {
+    this.rooms = rooms.values().toArray(new AdvRoom[rooms.size()]);
+    int entries = 0;
+    for (int i = 0; i < this.rooms.length; i++) {
+      roomIndex.put(this.rooms[i].getRoomNumber(), i);
+      entries += this.rooms[i].getMotionTable().length;
+    }
+    Map<String, Integer> objectIds = new HashMap<>();
+    for (AdvObject object : objects) {
+      objectIds.putIfAbsent(object.getName().toUpperCase(), object.getId());
+    }
+
+    start = new int[this.rooms.length + 1];
+    direction = new int[entries];
+    destination = new int[entries];
+    key = new int[entries];
+    int n = 0;
+    for (int i = 0; i < this.rooms.length; i++) {
+      start[i] = n;
+      for (AdvMotionTableEntry entry : this.rooms[i].getMotionTable()) {
+        direction[n] = intern(entry.getDirection());
+        destination[n] = resolveDestination(this.rooms[i], entry);
+        key[n] = (entry.getKeyName() == null) ? NO_KEY
+            : objectIds.getOrDefault(entry.getKeyName(), objects.size());
+        n++;
+      }
+    }
+    start[this.rooms.length] = n;
+    directionNames = new String[directionIds.size()];
+    for (Map.Entry<String, Integer> e : directionIds.entrySet()) {
+      directionNames[e.getValue()] = e.getKey();
+    }
+    forced = directionIds.getOrDefault("FORCED", -1);
+    forcedTarget = new int[this.rooms.length];
+    for (int i = 0; i < this.rooms.length; i++) {
+      if (!isForced(i)) {
+        forcedTarget[i] = NOT_FORCED;
+      } else {
+        forcedTarget[i] = (key[start[i]] == NO_KEY) ? destination[start[i]] : KEYED;
+      }
+    }
+    chainEnd = new int[this.rooms.length];
+    resolveChains();
+  }
+
+  // follows the keyless FORCED exits from every room to the end of their chain
+  private void resolveChains() {
+    byte[] state = new byte[rooms.length]; // 0 = not seen, 1 = on the current path, 2 = resolved
+    int[] path = new int[rooms.length];
+    for (int i = 0; i < rooms.length; i++) {
+      int length = 0;
+      int room = i;
+      while (room != END && state[room] == 0 && forcedTarget[room] >= END) {
+        state[room] = 1;
+        path[length++] = room;
+        room = forcedTarget[room];
+      }
+      if (room != END && state[room] == 1) {
+        throw new IllegalArgumentException("Room " + rooms[room].getRoomNumber()
+            + ": FORCED exits without keys lead back to this room");
+      }
+      int end = (room == END || state[room] == 0) ? room : chainEnd[room];
+      if (room != END && state[room] == 0) {
+        state[room] = 2;
+        chainEnd[room] = room;
+      }
+      while (length > 0) {
+        int r = path[--length];
+        state[r] = 2;
+        chainEnd[r] = end;
+      }
+    }
+  }
+
+  private int intern(String dir) {
+    Integer id = directionIds.get(dir);
+    if (id == null) {
+      id = directionIds.size();
+      directionIds.put(dir, id);
+    }
+    return id;
+  }
+
+  private int resolveDestination(AdvRoom room, AdvMotionTableEntry entry) {
+    if (entry.getDestinationRoom() == 0) {
+      return END;
+    }
+    Integer index = roomIndex.get(entry.getDestinationRoom());
+    if (index == null) {
+      throw new IllegalArgumentException("Room " + room.getRoomNumber() + ": "
+          + entry.getDirection() + " leads to unknown room " + entry.getDestinationRoom());
+    }
+    return index;
+  }
+
+  /* Method: getRoomCount() */
+
+  /**
+   * Returns the number of rooms in the graph.
+   *
+   * @return The number of rooms
+   * @usage int n = graph.getRoomCount();
+   */
+  public int getRoomCount() {
+    return rooms.length;
+  }
+
+  /* Method: getRoom(index) */
+
+  /**
+   * Returns the room with the specified dense index, or null for END.
+   *
+   * @param index The dense index of the room
+   * @return The room at that index, or null
+   * @usage AdvRoom room = graph.getRoom(index);
+   */
+  public AdvRoom getRoom(int index) {
+    return (index == END) ? null : rooms[index];
+  }
+
+  /* Method: getRoomIndex(roomNumber) */
+
+  /**
+   * Returns the dense index of the room with the specified number, or END if there is no such
+   * room.
+   *
+   * @param roomNumber The room number used in the data files
+   * @return The dense index of the room, or END
+   * @usage int index = graph.getRoomIndex(roomNumber);
+   */
+  public int getRoomIndex(int roomNumber) {
+    Integer index = roomIndex.get(roomNumber);
+    return (index == null) ? END : index;
+  }
+
+  /* Method: getDirectionId(name) */
+
+  /**
+   * Returns the token of the specified direction, or -1 if no room of the world has an exit in
+   * that direction.
+   *
+   * @param name The direction, in upper case
+   * @return The direction token, or -1
+   * @usage int dir = graph.getDirectionId(name);
+   */
+  public int getDirectionId(String name) {
+    Integer id = directionIds.get(name);
+    return (id == null) ? -1 : id;
+  }
+
+  /* Method: getDirectionName(id) */
+
+  /**
+   * Returns the direction that corresponds to the specified token.
+   *
+   * @param id The direction token
+   * @return The name of the direction
+   * @usage String name = graph.getDirectionName(id);
+   */
+  public String getDirectionName(int id) {
+    return directionNames[id];
+  }
+
+  /* Method: getDirectionCount() */
+
+  /**
+   * Returns the number of distinct directions used by the world.
+   *
+   * @return The number of direction tokens
+   * @usage int n = graph.getDirectionCount();
+   */
+  public int getDirectionCount() {
+    return directionNames.length;
+  }
+
+  /* Method: isForced(room) */
+
+  /**
+   * Returns true if the room with the specified index moves the player on without waiting for a
+   * command, which is the case when its first exit is FORCED.
+   *
+   * @param room The dense index of the room
+   * @return true if the room has FORCED exits
+   * @usage if (graph.isForced(room)) . . .
+   */
+  public boolean isForced(int room) {
+    return forced >= 0 && start[room] < start[room + 1] && direction[start[room]] == forced;
+  }
+
+  /* Method: getForcedDirection() */
+
+  /**
+   * Returns the token of the FORCED direction, or -1 if the world has no forced exits.
+   *
+   * @return The FORCED direction token, or -1
+   * @usage int dir = graph.getForcedDirection();
+   */
+  public int getForcedDirection() {
+    return forced;
+  }
+
+  /* Method: findForcedDestination(room, carried) */
+
+  /**
+   * Returns the room a forced room moves the player to. If the first FORCED exit of the room needs
+   * no key, the answer was computed when the graph was built; otherwise the FORCED exits are
+   * searched for one whose key is carried.
+   *
+   * @param room The dense index of a forced room
+   * @param carried The ids of the objects the player is carrying
+   * @return The destination room index, END, or NO_EXIT if no FORCED exit can be taken
+   * @usage int next = graph.findForcedDestination(room, carried);
+   */
+  public int findForcedDestination(int room, BitSet carried) {
+    int target = forcedTarget[room];
+    if (target >= END) {
+      return target;
+    }
+    int exit = (target == KEYED) ? findExit(room, forced, carried) : -1;
+    return (exit == -1) ? NO_EXIT : destination[exit];
+  }
+
+  /* Method: getForcedChainEnd(room) */
+
+  /**
+   * Returns the room in which a chain of keyless FORCED exits starting at the specified room comes
+   * to rest: a room that waits for a command, a forced room whose exit needs a key, or END. For a
+   * room that does not start such a chain, this is the room itself.
+   *
+   * @param room The dense index of the room
+   * @return The room index at the end of the chain, or END
+   * @usage int last = graph.getForcedChainEnd(room);
+   */
+  public int getForcedChainEnd(int room) {
+    return chainEnd[room];
+  }
+
+  /* Method: findExit(room, dir, carried) */
+
+  /**
+   * Finds the first exit of a room that goes in the specified direction and whose key, if any, is
+   * among the carried objects.
+   *
+   * @param room The dense index of the room
+   * @param dir The direction token
+   * @param carried The ids of the objects the player is carrying
+   * @return The position of the exit, or -1 if there is none
+   * @usage int exit = graph.findExit(room, dir, carried);
+   */
+  public int findExit(int room, int dir, BitSet carried) {
+    for (int i = start[room], end = start[room + 1]; i < end; i++) {
+      if (direction[i] == dir && (key[i] == NO_KEY || carried.get(key[i]))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /* Method: hasExit(room, dir) */
+
+  /**
+   * Returns true if a room has an exit in the specified direction, whether or not it needs a key.
+   *
+   * @param room The dense index of the room
+   * @param dir The direction token
+   * @return true if the room has such an exit
+   * @usage if (graph.hasExit(room, dir)) . . .
+   */
+  public boolean hasExit(int room, int dir) {
+    for (int i = start[room], end = start[room + 1]; i < end; i++) {
+      if (direction[i] == dir) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /* Method: getDestination(exit) */
+
+  /**
+   * Returns the dense index of the room an exit leads to, or END.
+   *
+   * @param exit The position of the exit as returned by findExit
+   * @return The destination room index, or END
+   * @usage int next = graph.getDestination(exit);
+   */
+  public int getDestination(int exit) {
+    return destination[exit];
+  }
+
+  /* Method: getKey(exit) */
+
+  /**
+   * Returns the id of the object needed to use an exit, or NO_KEY.
+   *
+   * @param exit The position of the exit
+   * @return The key object id, or NO_KEY
+   * @usage int key = graph.getKey(exit);
+   */
+  public int getKey(int exit) {
+    return key[exit];
+  }
+
+  /* Method: getExitStart(room) */
+
+  /**
+   * Returns the position of the first exit of a room. The exits of room i are the positions from
+   * getExitStart(i) up to, but not including, getExitStart(i + 1).
+   *
+   * @param room The dense index of the room, or the room count for the end of the last room
+   * @return The position of the first exit of the room
+   * @usage int first = graph.getExitStart(room);
+   */
+  public int getExitStart(int room) {
+    return start[room];
+  }
+
+  /* Method: getDirection(exit) */
+
+  /**
+   * Returns the direction token of an exit.
+   *
+   * @param exit The position of the exit
+   * @return The direction token
+   * @usage int dir = graph.getDirection(exit);
+   */
+  public int getDirection(int exit) {
+    return direction[exit];
+  }
+}
@@ -28,6 +28,7 @@ public class AdvObject {
   private String name;
   private int roomNumber;
   private String description;
+  private int id = -1;
   /* Method: getName() */
 
   /**
@@ -55,6 +56,15 @@ public class AdvObject {
     return object;
   }
 
+  // creates an object from data that has already been parsed, as in a compiled world image
+  static AdvObject create(String name, String description, int roomNumber) {
+    AdvObject object = new AdvObject();
+    object.name = name;
+    object.description = description;
+    object.roomNumber = roomNumber;
+    return object;
+  }
+
   /* Method: getDescription() */
 
   /**
@@ -93,6 +103,24 @@ public class AdvObject {
     return roomNumber;
   }
 
+  /* Method: getId() */
+
+  /**
+   * Returns the dense number of the object within its world, which is its position in the objects
+   * file starting at 0.  The id is -1 until the object has been added to a world.
+   *
+   * @return The id of the object
+   * @usage int id = obj.getId();
+   */
+  public int getId() {
+    return id;
+  }
+
+  // called once by AdvWorld while the world is being loaded
+  void setId(int id) {
+    this.id = id;
+  }
+
   @Override
   public String toString() {
     return this.name;
@@ -0,0 +1,377 @@
+/*
+ * File: AdvObjectLocations.java
+ * -----------------------------
+ * This file defines the index that records where every object of a
+ * world is during one game.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/* Class: AdvObjectLocations */
+
+/**
+ * This class records the location of every object in one game, indexed by the dense object ids
+ * assigned by AdvWorld. The location of an object is the index of its room in the motion graph, or
+ * CARRIED if the player has it, so finding, taking and dropping an object take constant time no
+ * matter how many objects a room holds or the player carries.
+ *
+ * <p>Only the difference from the initial placement of the world is stored: the moves the player
+ * has made, in order, with a small open-addressing table from object id to its latest move and
+ * the set of rooms whose contents have changed. An object without a move is in its initial room.
+ * Nothing is allocated until the first move, so a game in which nothing has been moved costs a
+ * few dozen bytes however large the world is.
+ *
+ * <p>The latest moves into each location are also chained into a doubly linked list, whose first
+ * and last move are found through two more tables keyed by location, and a move is unlinked when
+ * its object moves again. Listing a location therefore costs the objects placed there by the
+ * objects file plus the objects moved there, and not the number of moves made in the whole game.
+ *
+ * <p>A room lists the objects that never left it in the order of the objects file, followed by the
+ * objects moved into it in the order of their moves; the inventory lists the carried objects in
+ * the order they were taken.
+ */
+
+public class AdvObjectLocations {
+
+  /**
+   * The location of an object the player is carrying
+   */
+  public static final int CARRIED = -2;
+
+  // the carried set of every game that carries nothing; it is never modified
+  private static final BitSet NOTHING_CARRIED = new BitSet();
+
+  private final AdvWorld world;
+  // the moves in order; a move superseded by a later move of the same object has the id -1
+  private int[] moveIds;
+  private int[] moveTargets;
+  // the neighbours of each live move in the list of its location, or -1
+  private int[] moveNext;
+  private int[] movePrevious;
+  private int moveCount;
+  private int liveCount;
+  private IntTable latestMove;
+  // the first and last live move of each location, keyed by where - CARRIED
+  private IntTable firstMove;
+  private IntTable lastMove;
+  private IntTable changedRooms;
+  private BitSet carried;
+
+  /**
+   * Creates an index with every object in its initial room.
+   *
+   * @param world The world the objects belong to
+   * @usage AdvObjectLocations locations = new AdvObjectLocations(world);
+   */
+  public AdvObjectLocations(AdvWorld world) {
+    this.world = world;
+  }
+
+  /* Method: reset() */
+
+  /**
+   * Puts every object back in its initial room.
+   *
+   * @usage locations.reset();
+   */
+  public void reset() {
+    moveIds = null;
+    moveTargets = null;
+    moveNext = null;
+    movePrevious = null;
+    moveCount = 0;
+    liveCount = 0;
+    latestMove = null;
+    firstMove = null;
+    lastMove = null;
+    changedRooms = null;
+    carried = null;
+  }
+
+  /* Method: getLocation(id) */
+
+  /**
+   * Returns the location of an object: the index of its room, or CARRIED.
+   *
+   * @param id The id of the object
+   * @return The room index, or CARRIED
+   * @usage int where = locations.getLocation(id);
+   */
+  public int getLocation(int id) {
+    int move = (latestMove == null) ? -1 : latestMove.get(id);
+    return (move < 0) ? world.getInitialRoomIndex(id) : moveTargets[move];
+  }
+
+  /* Method: isCarried(id) */
+
+  /**
+   * Returns true if the player is carrying the object.
+   *
+   * @param id The id of the object
+   * @return true if the object is carried
+   * @usage if (locations.isCarried(id)) . . .
+   */
+  public boolean isCarried(int id) {
+    return carried != null && carried.get(id);
+  }
+
+  /* Method: getCarried() */
+
+  /**
+   * Returns the set of ids of the carried objects, which is what AdvMotionGraph.findExit checks
+   * keys against. The set is live and must not be modified.
+   *
+   * @return The ids of the carried objects
+   * @usage BitSet carried = locations.getCarried();
+   */
+  public BitSet getCarried() {
+    return (carried == null) ? NOTHING_CARRIED : carried;
+  }
+
+  /* Method: isChanged(room) */
+
+  /**
+   * Returns true if the contents of a room differ, or may differ, from its initial contents. A room
+   * that has not changed can be described from the shared world.
+   *
+   * @param room The index of the room
+   * @return true if an object has left or entered the room
+   * @usage if (locations.isChanged(room)) . . .
+   */
+  public boolean isChanged(int room) {
+    return room >= 0 && changedRooms != null && changedRooms.get(room) >= 0;
+  }
+
+  /* Method: moveTo(id, where) */
+
+  /**
+   * Moves an object to a room or, if where is CARRIED, to the inventory. The object becomes the
+   * last one listed there.
+   *
+   * @param id The id of the object
+   * @param where The index of the room, or CARRIED
+   * @usage locations.moveTo(id, where);
+   */
+  public void moveTo(int id, int where) {
+    int from = getLocation(id);
+    if (from == CARRIED) {
+      carried.clear(id);
+    } else {
+      markChanged(from);
+    }
+    if (where == CARRIED) {
+      if (carried == null) {
+        carried = new BitSet();
+      }
+      carried.set(id);
+    } else {
+      markChanged(where);
+    }
+    if (latestMove == null) {
+      latestMove = new IntTable();
+      firstMove = new IntTable();
+      lastMove = new IntTable();
+      moveIds = new int[4];
+      moveTargets = new int[4];
+      moveNext = new int[4];
+      movePrevious = new int[4];
+    }
+    int previous = latestMove.get(id);
+    if (previous >= 0) {
+      unlink(previous);
+      moveIds[previous] = -1;
+      liveCount--;
+    }
+    if (moveCount == moveIds.length) {
+      makeRoom();
+    }
+    moveIds[moveCount] = id;
+    moveTargets[moveCount] = where;
+    link(moveCount);
+    latestMove.put(id, moveCount);
+    moveCount++;
+    liveCount++;
+  }
+
+  // appends a move to the list of its location
+  private void link(int move) {
+    int key = moveTargets[move] - CARRIED;
+    int last = lastMove.get(key);
+    movePrevious[move] = last;
+    moveNext[move] = -1;
+    if (last < 0) {
+      firstMove.put(key, move);
+    } else {
+      moveNext[last] = move;
+    }
+    lastMove.put(key, move);
+  }
+
+  // removes a move from the list of its location
+  private void unlink(int move) {
+    int key = moveTargets[move] - CARRIED;
+    int previous = movePrevious[move];
+    int next = moveNext[move];
+    if (previous < 0) {
+      firstMove.put(key, next);
+    } else {
+      moveNext[previous] = next;
+    }
+    if (next < 0) {
+      lastMove.put(key, previous);
+    } else {
+      movePrevious[next] = previous;
+    }
+  }
+
+  /* Method: getObjectsIn(where) */
+
+  /**
+   * Returns the objects in a room or, if where is CARRIED, in the inventory, in the order they are
+   * listed to the player. An empty result is the shared empty list.
+   *
+   * @param where The index of the room, or CARRIED
+   * @return The objects there
+   * @usage List<AdvObject> objects = locations.getObjectsIn(where);
+   */
+  public List<AdvObject> getObjectsIn(int where) {
+    List<AdvObject> objects = world.getObjects();
+    List<AdvObject> result = null;
+    if (where != CARRIED) {
+      AdvRoom room = world.getGraph().getRoom(where);
+      for (int i = 0; i < room.getObjectCount(); i++) {
+        int id = room.getObject(i).getId();
+        if (latestMove == null || latestMove.get(id) < 0) {
+          result = add(result, objects.get(id));
+        }
+      }
+    }
+    if (firstMove != null) {
+      for (int move = firstMove.get(where - CARRIED); move >= 0; move = moveNext[move]) {
+        result = add(result, objects.get(moveIds[move]));
+      }
+    }
+    return (result == null) ? Collections.emptyList() : result;
+  }
+
+  private static List<AdvObject> add(List<AdvObject> list, AdvObject obj) {
+    List<AdvObject> result = (list == null) ? new ArrayList<>() : list;
+    result.add(obj);
+    return result;
+  }
+
+  /* Method: getMovedObjects() */
+
+  /**
+   * Returns the ids of the objects the player has moved, in the order of their last move.
+   *
+   * @return A new array of object ids
+   * @usage int[] ids = locations.getMovedObjects();
+   */
+  public int[] getMovedObjects() {
+    int[] ids = new int[liveCount];
+    int n = 0;
+    for (int i = 0; i < moveCount; i++) {
+      if (moveIds[i] >= 0) {
+        ids[n++] = moveIds[i];
+      }
+    }
+    return ids;
+  }
+
+  private void markChanged(int room) {
+    if (changedRooms == null) {
+      changedRooms = new IntTable();
+    }
+    changedRooms.put(room, 0);
+  }
+
+  // drops the superseded moves if they fill half the arrays, and doubles the arrays otherwise
+  private void makeRoom() {
+    if (liveCount <= moveIds.length / 2) {
+      // the lists are rebuilt in the order of the moves, which is the order they were in
+      firstMove = new IntTable();
+      lastMove = new IntTable();
+      int n = 0;
+      for (int i = 0; i < moveCount; i++) {
+        if (moveIds[i] >= 0) {
+          moveIds[n] = moveIds[i];
+          moveTargets[n] = moveTargets[i];
+          latestMove.put(moveIds[n], n);
+          link(n);
+          n++;
+        }
+      }
+      moveCount = n;
+    } else {
+      int length = 2 * moveIds.length;
+      moveIds = Arrays.copyOf(moveIds, length);
+      moveTargets = Arrays.copyOf(moveTargets, length);
+      moveNext = Arrays.copyOf(moveNext, length);
+      movePrevious = Arrays.copyOf(movePrevious, length);
+    }
+  }
+
+  /* Private class: IntTable */
+
+  /**
+   * This class maps non-negative int keys to int values with open addressing and linear probing,
+   * without boxing. Keys are stored plus one, so 0 marks a free slot. Entries are never removed; a
+   * missing key reads as -1, so storing -1 is how a value is cleared.
+   */
+
+  private static class IntTable {
+
+    private int[] keys = new int[8];
+    private int[] values = new int[8];
+    private int size;
+
+    int get(int key) {
+      int mask = keys.length - 1;
+      for (int i = hash(key) & mask; keys[i] != 0; i = (i + 1) & mask) {
+        if (keys[i] == key + 1) {
+          return values[i];
+        }
+      }
+      return -1;
+    }
+
+    void put(int key, int value) {
+      int mask = keys.length - 1;
+      int i = hash(key) & mask;
+      while (keys[i] != 0 && keys[i] != key + 1) {
+        i = (i + 1) & mask;
+      }
+      if (keys[i] == 0) {
+        keys[i] = key + 1;
+        if (++size > keys.length / 2) {
+          values[i] = value;
+          grow();
+          return;
+        }
+      }
+      values[i] = value;
+    }
+
+    private void grow() {
+      int[] oldKeys = keys;
+      int[] oldValues = values;
+      keys = new int[2 * oldKeys.length];
+      values = new int[2 * oldValues.length];
+      size = 0;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != 0) {
+          put(oldKeys[i] - 1, oldValues[i]);
+        }
+      }
+    }
+
+    private static int hash(int key) {
+      return key * 0x9E3779B1 >>> 16 ^ key;
+    }
+  }
+}
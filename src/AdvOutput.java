@@ -0,0 +1,193 @@
+/*
+ * File: AdvOutput.java
+ * --------------------
+ * This file defines the sink through which an Adventure game
+ * writes its output.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/* Class: AdvOutput */
+
+/**
+ * This class is the general superclass of the places a game writes its output to. Everything a game
+ * prints during one turn is encoded as UTF-8 into a buffer that is reused from turn to turn, and
+ * the game calls flush once at the end of the turn, which hands the whole turn to the backend in a
+ * single write. The buffer is allocated on the first write and released after a turn that made
+ * it grow large, so an idle game holds no buffer of more than a few hundred bytes. The subclasses
+ * define that write for a particular destination: the console, a byte array or a channel.
+ *
+ * <p>A sink belongs to one game and is not thread-safe.
+ */
+
+public abstract class AdvOutput {
+
+  private static final int INITIAL_SIZE = 256;
+  private static final int RETAINED_SIZE = 4096;
+
+  private byte[] buffer;
+  private int length;
+
+  /* Method: print(s) */
+
+  /**
+   * Adds text to the current turn.
+   *
+   * @param s The text to add
+   * @usage output.print(s);
+   */
+  public void print(CharSequence s) {
+    int n = s.length();
+    ensureCapacity(n);
+    for (int i = 0; i < n; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        buffer[length++] = (byte) c;
+      } else {
+        i = encode(s, i);
+        // encode used up some of the room reserved for the rest of the text
+        ensureCapacity(n - i - 1);
+      }
+    }
+  }
+
+  /* Method: println(s) */
+
+  /**
+   * Adds a line of text to the current turn.
+   *
+   * @param s The text of the line
+   * @usage output.println(s);
+   */
+  public void println(CharSequence s) {
+    print(s);
+    ensureCapacity(1);
+    buffer[length++] = '\n';
+  }
+
+  /* Method: write(bytes, offset, count) */
+
+  /**
+   * Adds bytes that are already encoded as UTF-8 to the current turn.
+   *
+   * @param bytes The array holding the bytes
+   * @param offset The position of the first byte
+   * @param count The number of bytes
+   * @usage output.write(bytes, offset, count);
+   */
+  public void write(byte[] bytes, int offset, int count) {
+    ensureCapacity(count);
+    System.arraycopy(bytes, offset, buffer, length, count);
+    length += count;
+  }
+
+  /* Method: flush() */
+
+  /**
+   * Ends the current turn: writes everything added since the last flush to the backend in a single
+   * write and empties the buffer. Nothing is written if the turn is empty.
+   *
+   * @usage output.flush();
+   */
+  public void flush() {
+    if (length > 0) {
+      emit(buffer, 0, length);
+      length = 0;
+      if (buffer.length > RETAINED_SIZE) {
+        buffer = null;
+      }
+    }
+  }
+
+  /* Method: trim() */
+
+  /**
+   * Releases the buffer if the current turn is empty. A game that is going to sit idle for a while
+   * holds no buffer afterwards; the next write allocates a new one.
+   *
+   * @usage output.trim();
+   */
+  public void trim() {
+    if (length == 0) {
+      buffer = null;
+    }
+  }
+
+  /* Method: discard() */
+
+  /**
+   * Empties the buffer without writing the current turn.
+   *
+   * @usage output.discard();
+   */
+  public void discard() {
+    length = 0;
+  }
+
+  /* Abstract method: emit(bytes, offset, count) */
+
+  /**
+   * Writes one complete turn to the destination of this sink. The bytes are only valid during the
+   * call. A backend that fails to write throws java.io.UncheckedIOException.
+   *
+   * @param bytes The array holding the turn
+   * @param offset The position of the first byte
+   * @param count The number of bytes
+   */
+  protected abstract void emit(byte[] bytes, int offset, int count);
+
+  // encodes the non-ASCII character at position i and returns the position of its last char
+  private int encode(CharSequence s, int i) {
+    char c = s.charAt(i);
+    if (c < 0x800) {
+      ensureCapacity(2);
+      buffer[length++] = (byte) (0xC0 | (c >> 6));
+      buffer[length++] = (byte) (0x80 | (c & 0x3F));
+      return i;
+    }
+    if (Character.isHighSurrogate(c) && i + 1 < s.length()
+        && Character.isLowSurrogate(s.charAt(i + 1))) {
+      int cp = Character.toCodePoint(c, s.charAt(i + 1));
+      ensureCapacity(4);
+      buffer[length++] = (byte) (0xF0 | (cp >> 18));
+      buffer[length++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+      buffer[length++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+      buffer[length++] = (byte) (0x80 | (cp & 0x3F));
+      return i + 1;
+    }
+    if (Character.isSurrogate(c)) {
+      ensureCapacity(1);
+      buffer[length++] = '?';
+      return i;
+    }
+    ensureCapacity(3);
+    buffer[length++] = (byte) (0xE0 | (c >> 12));
+    buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+    buffer[length++] = (byte) (0x80 | (c & 0x3F));
+    return i;
+  }
+
+  private void ensureCapacity(int extra) {
+    if (buffer == null) {
+      buffer = new byte[Math.max(INITIAL_SIZE, extra)];
+    } else if (length + extra > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, length + extra));
+    }
+  }
+
+  /* Static method: decode(bytes, offset, count) */
+
+  /**
+   * Decodes output bytes back into text.
+   *
+   * @param bytes The array holding the bytes
+   * @param offset The position of the first byte
+   * @param count The number of bytes
+   * @return The decoded text
+   * @usage String text = AdvOutput.decode(bytes, offset, count);
+   */
+  public static String decode(byte[] bytes, int offset, int count) {
+    return new String(bytes, offset, count, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * File: AdvParsedCommand.java
+ * ---------------------------
+ * This file defines the reusable result of tokenizing one line of
+ * player input.
+ */
+
+/* Class: AdvParsedCommand */
+
+/**
+ * This class holds the tokens of one command line, as produced by AdvVocabulary.tokenize. A game
+ * keeps a single instance and refills it for every line, so parsing a command allocates nothing.
+ * A word that is not in the vocabulary is stored as -1.
+ */
+
+public class AdvParsedCommand {
+
+  /**
+   * The number of words kept from each line; the game uses only the verb and its object
+   */
+  public static final int CAPACITY = 8;
+
+  private final int[] tokens = new int[CAPACITY];
+  private int count;
+
+  /* Method: getCount() */
+
+  /**
+   * Returns the number of words in the command.
+   *
+   * @return The number of tokens
+   * @usage int n = command.getCount();
+   */
+  public int getCount() {
+    return count;
+  }
+
+  /* Method: getToken(index) */
+
+  /**
+   * Returns the token of the word at the specified position, or -1 if the word is unknown or the
+   * command has fewer words.
+   *
+   * @param index The position of the word, starting at 0
+   * @return The token, or -1
+   * @usage int token = command.getToken(index);
+   */
+  public int getToken(int index) {
+    return (index < count) ? tokens[index] : -1;
+  }
+
+  void clear() {
+    count = 0;
+  }
+
+  boolean isFull() {
+    return count == CAPACITY;
+  }
+
+  void add(int token) {
+    tokens[count++] = token;
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * File: AdvReplayRunner.java
+ * --------------------------
+ * This program replays recorded player scripts in parallel and
+ * compares their output with golden transcripts.
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/* Class: AdvReplayRunner */
+
+/**
+ * This class replays recorded scripts against the game without a console. A script has the format
+ * of SmallTest.txt: the name of the world on the first line, followed by one line of player input
+ * per line. Every script runs in its own game on its own thread, with its output captured in an
+ * AdvByteArrayOutput, and the worlds come from the shared AdvWorldCache, so each is loaded once.
+ *
+ * <p>The golden transcript of Name.txt is NameGolden.txt. It holds everything the game prints,
+ * starting with the opening description; it is what AdventureTest prints for the script, without
+ * the "What will be your adventure today?" question.
+ *
+ * <p>Usage: java AdvReplayRunner [-record] [-repeat n] [-threads n] script ...
+ *
+ * <ul>
+ * <li>-record writes the golden transcripts instead of comparing with them
+ * <li>-repeat n runs every script n times, for throughput measurements
+ * <li>-threads n sets the number of threads, which defaults to the number of processors
+ * </li>
+ */
+
+public class AdvReplayRunner {
+
+  /* Method: replay(script) */
+
+  /**
+   * Runs a script and returns everything the game printed. The script ends when its input runs out
+   * or the game ends, whichever comes first.
+   *
+   * @param script The lines of the script, starting with the world name
+   * @return The transcript of the game
+   * @usage String transcript = runner.replay(script);
+   */
+  public String replay(List<String> script) throws IOException {
+    AdvWorld world = AdvWorldCache.getShared().get(script.get(0).trim());
+    AdvByteArrayOutput transcript = new AdvByteArrayOutput();
+    Adventure game = new Adventure(world, transcript);
+    game.start();
+    for (int i = 1; i < script.size() && game.isGameOn(); i++) {
+      game.step(script.get(i));
+    }
+    return transcript.toString();
+  }
+
+  /* Static method: getGoldenPath(script) */
+
+  /**
+   * Returns the path of the golden transcript of a script.
+   *
+   * @param script The path of the script
+   * @return The path of its golden transcript
+   * @usage Path golden = AdvReplayRunner.getGoldenPath(script);
+   */
+  public static Path getGoldenPath(Path script) {
+    String name = script.getFileName().toString();
+    int dot = name.lastIndexOf('.');
+    String base = (dot < 0) ? name : name.substring(0, dot);
+    return script.resolveSibling(base + "Golden.txt");
+  }
+
+  /* Private class: Result */
+
+  /**
+   * This class holds the outcome of one run of a script.
+   */
+
+  private static class Result {
+
+    private final Path script;
+    private final long nanos;
+    private final String failure;
+
+    Result(Path script, long nanos, String failure) {
+      this.script = script;
+      this.nanos = nanos;
+      this.failure = failure;
+    }
+  }
+
+  private Result run(Path script, boolean record) {
+    try {
+      List<String> lines = Files.readAllLines(script, StandardCharsets.UTF_8);
+      long start = System.nanoTime();
+      String transcript = replay(lines);
+      long nanos = System.nanoTime() - start;
+      Path golden = getGoldenPath(script);
+      if (record) {
+        Files.write(golden, transcript.getBytes(StandardCharsets.UTF_8));
+        return new Result(script, nanos, null);
+      }
+      if (!Files.exists(golden)) {
+        return new Result(script, nanos, "no golden transcript " + golden);
+      }
+      String expected = new String(Files.readAllBytes(golden), StandardCharsets.UTF_8);
+      return new Result(script, nanos, compare(expected, transcript));
+    } catch (IOException | RuntimeException e) {
+      return new Result(script, 0, e.toString());
+    }
+  }
+
+  // describes the first line that differs, or returns null if the transcripts are the same
+  private static String compare(String expected, String actual) {
+    if (expected.equals(actual)) {
+      return null;
+    }
+    String[] want = expected.split("\n", -1);
+    String[] got = actual.split("\n", -1);
+    for (int i = 0; i < Math.max(want.length, got.length); i++) {
+      String w = (i < want.length) ? want[i] : "<end of transcript>";
+      String g = (i < got.length) ? got[i] : "<end of transcript>";
+      if (!w.equals(g)) {
+        return "line " + (i + 1) + ": expected \"" + w + "\" but was \"" + g + "\"";
+      }
+    }
+    return "transcripts differ";
+  }
+
+  /**
+   * Runs the scripts named on the command line and prints a summary.
+   */
+  public static void main(String[] args) throws Exception {
+    boolean record = false;
+    int repeat = 1;
+    int threads = Runtime.getRuntime().availableProcessors();
+    List<Path> scripts = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "-record":
+          record = true;
+          break;
+        case "-repeat":
+          repeat = Integer.parseInt(args[++i]);
+          break;
+        case "-threads":
+          threads = Integer.parseInt(args[++i]);
+          break;
+        default:
+          scripts.add(Paths.get(args[i]));
+          break;
+      }
+    }
+    if (record) {
+      repeat = 1;
+    }
+
+    AdvReplayRunner runner = new AdvReplayRunner();
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<Future<Result>> futures = new ArrayList<>();
+    long start = System.nanoTime();
+    for (int r = 0; r < repeat; r++) {
+      for (Path script : scripts) {
+        boolean write = record;
+        futures.add(pool.submit(() -> runner.run(script, write)));
+      }
+    }
+    long[] latencies = new long[futures.size()];
+    int failures = 0;
+    for (int i = 0; i < futures.size(); i++) {
+      Result result = futures.get(i).get();
+      latencies[i] = result.nanos;
+      if (result.failure != null) {
+        failures++;
+        if (i < scripts.size()) {
+          System.out.println("FAIL " + result.script + ": " + result.failure);
+        }
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+    pool.shutdown();
+
+    Arrays.sort(latencies);
+    System.out.printf("%d runs of %d scripts on %d threads: %d passed, %d failed%n",
+        latencies.length, scripts.size(), threads, latencies.length - failures, failures);
+    System.out.printf(
+        "%.1f scripts/s; latency p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+        latencies.length * 1e9 / elapsed, percentile(latencies, 50) / 1e6,
+        percentile(latencies, 90) / 1e6, percentile(latencies, 99) / 1e6,
+        percentile(latencies, 100) / 1e6);
+    if (failures > 0) {
+      System.exit(1);
+    }
+  }
+
+  private static long percentile(long[] sorted, int p) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+  }
+}
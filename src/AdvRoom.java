@@ -5,7 +5,10 @@
  * Adventure game.
  */
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Scanner;
 
 /* Class: AdvRoom */
@@ -24,16 +27,32 @@ import java.util.Scanner;
  *
  * The external format of the room data file is described in the assignment handout. The comments on
  * the methods exported by this class show how to use the initialized data structure.
+ *
+ * <p>Rooms belong to an AdvWorld that is shared by every game, so the objects of a room are its
+ * initial contents; each game keeps track of the objects it has moved itself.
+ *
+ * <p>A room also keeps the output of LOOK for its initial contents, encoded as UTF-8, together
+ * with the version of its contents it was rendered for. The version changes whenever an object is
+ * added or removed, which makes the next call to getLookBytes render the text again.
  */
 
 public class AdvRoom {
 
+  // the contents of every room that has never held an object
+  private static final List<AdvObject> NO_OBJECTS = Collections.emptyList();
+
   private String name;
   private int roomNumber;
   private String[] description;
   private AdvMotionTableEntry[] motionTable;
-  private ArrayList<AdvObject> objects;
+  private List<AdvObject> objects = NO_OBJECTS;
   private boolean hasBeenVisited;
+  private AdvDescriptionCache descriptionCache;
+  private int descriptionOffset;
+  private int descriptionLength;
+  private int descriptionLines;
+  private int version;
+  private volatile LookText look;
 
   // private constructor
   // to prevent calling the class constructor from outside
@@ -42,6 +61,28 @@ public class AdvRoom {
   private AdvRoom() {
   }
 
+  // creates a room from data that has already been parsed, as in a compiled world image
+  static AdvRoom create(int roomNumber, String name, String[] description,
+      AdvMotionTableEntry[] motionTable) {
+    AdvRoom room = new AdvRoom();
+    room.roomNumber = roomNumber;
+    room.name = name;
+    room.description = description;
+    room.motionTable = motionTable;
+    return room;
+  }
+
+  // creates a room whose description is read from a world image only when it is needed
+  static AdvRoom createLazy(int roomNumber, String name, AdvDescriptionCache cache, int offset,
+      int length, int lineCount, AdvMotionTableEntry[] motionTable) {
+    AdvRoom room = create(roomNumber, name, null, motionTable);
+    room.descriptionCache = cache;
+    room.descriptionOffset = offset;
+    room.descriptionLength = length;
+    room.descriptionLines = lineCount;
+    return room;
+  }
+
   /* Method: getRoomNumber() */
 
   /**
@@ -91,7 +132,6 @@ public class AdvRoom {
     room.motionTable =
         list2.toArray(new
             AdvMotionTableEntry[list2.size()]);
-    room.objects = new ArrayList<>();
     return room;
   }
 
@@ -134,6 +174,9 @@ public class AdvRoom {
    * @usage String[] description = room.getDescription();
    */
   public String[] getDescription() {
+    if (description == null) {
+      return descriptionCache.get(descriptionOffset, descriptionLength, descriptionLines);
+    }
     return description; // Replace with your code
   }
 
@@ -146,7 +189,11 @@ public class AdvRoom {
    * @usage room.addObject(obj);
    */
   public void addObject(AdvObject obj) {
+    if (objects == NO_OBJECTS) {
+      objects = new ArrayList<>();
+    }
     objects.add(obj);
+    version++;
   }
 
   /* Method: containsObject(obj) */
@@ -158,7 +205,9 @@ public class AdvRoom {
    * @usage room.removeObject(obj);
    */
   public void removeObject(AdvObject obj) {
-    objects.remove(obj);
+    if (objects.remove(obj)) {
+      version++;
+    }
   }
 
   /* Method: getObjectCount() */
@@ -237,6 +286,71 @@ public class AdvRoom {
   public AdvMotionTableEntry[] getMotionTable() {
     return motionTable;
   }
+
+  /* Method: getVersion() */
+
+  /**
+   * Returns the version of the contents of this room, which changes every time an object is added
+   * or removed.
+   *
+   * @return The version of the room contents
+   * @usage int version = room.getVersion();
+   */
+  public int getVersion() {
+    return version;
+  }
+
+  /* Method: getLookBytes() */
+
+  /**
+   * Returns the output of LOOK in this room with its current contents: the description lines,
+   * followed by a line for each object, encoded as UTF-8. The bytes are rendered once per version
+   * and must not be modified. The rendering of a room whose description is read lazily from a
+   * world image is not kept, so the description cache still bounds the memory it uses.
+   *
+   * @return The encoded LOOK output
+   * @usage byte[] bytes = room.getLookBytes();
+   */
+  public byte[] getLookBytes() {
+    LookText text = look;
+    if (text == null || text.version != version) {
+      text = new LookText(version, renderLook(getDescription(), objects));
+      if (description != null) {
+        look = text;
+      }
+    }
+    return text.bytes;
+  }
+
+  // renders the LOOK output of a room with the specified description and objects
+  static byte[] renderLook(String[] description, List<AdvObject> objects) {
+    StringBuilder sb = new StringBuilder();
+    for (String line : description) {
+      sb.append(line).append('\n');
+    }
+    for (AdvObject obj : objects) {
+      sb.append("There is ").append(obj).append(" here\n");
+    }
+    return sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /* Private class: LookText */
+
+  /**
+   * This class pairs a rendering of LOOK with the version of the room contents it shows, so both
+   * are published together.
+   */
+
+  private static class LookText {
+
+    private final int version;
+    private final byte[] bytes;
+
+    LookText(int version, byte[] bytes) {
+      this.version = version;
+      this.bytes = bytes;
+    }
+  }
 }
 
 
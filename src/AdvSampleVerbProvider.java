@@ -0,0 +1,48 @@
+/*
+ * File: AdvSampleVerbProvider.java
+ * --------------------------------
+ * This file defines an example of a service that adds a verb to
+ * the Adventure game.
+ */
+
+import java.util.Collections;
+import java.util.Map;
+
+/* Class: AdvSampleVerbProvider */
+
+/**
+ * This class is an example AdvVerbProvider that adds the verb WAIT, which prints "Time passes."
+ * It is compiled with the game but is not installed: its registration is the file
+ * samples/META-INF/services/AdvVerbProvider, so it takes effect only when the samples directory is
+ * on the class path, as in
+ *
+ * <pre>
+ *   java -cp classes:samples Adventure
+ * </pre>
+ */
+
+public class AdvSampleVerbProvider implements AdvVerbProvider {
+
+  /**
+   * The command of the WAIT verb
+   */
+  public static final AdvCommand WAIT = new WaitCommand();
+
+  @Override
+  public Map<String, AdvCommand> getVerbs() {
+    return Collections.singletonMap("WAIT", WAIT);
+  }
+}
+
+/* Package class: WaitCommand */
+
+/**
+ * This class implements the WAIT command.
+ */
+
+class WaitCommand extends AdvCommand {
+
+  public void execute(Adventure game, AdvObject obj) {
+    game.println("Time passes.");
+  }
+}
@@ -0,0 +1,442 @@
+/*
+ * File: AdvServer.java
+ * --------------------
+ * This program serves an Adventure world to players who connect
+ * over TCP, for example with telnet or netcat.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/* Class: AdvServer */
+
+/**
+ * This class is a line-oriented TCP front end for the game. Every connection plays its own game,
+ * which starts as soon as the player connects; each line the player sends is one step of the game,
+ * and the game writes its output back through the connection, which is an AdvOutput sink.
+ *
+ * <p>The server never blocks on a player. All connections are non-blocking channels served by a
+ * few threads, each running a Selector, so idle connections cost only their buffers. Everything a
+ * game waits for, such as the answer to "Are you sure (Y or N)?", is state of that game, not a
+ * pending read. A line longer than maxLine bytes is discarded up to its end and answered with
+ * "Line too long", so the input buffer of a connection never grows. A connection that does not
+ * read its output is not read from either once a limit of unsent output has built up.
+ *
+ * <p>The worlds come from the shared AdvWorldCache, so a connection made after the world has been
+ * reloaded plays the new version.
+ *
+ * <p>Usage: java AdvServer [-port n] [-threads n] [-maxLine n] [-watch] world
+ */
+
+public class AdvServer implements Closeable {
+
+  /**
+   * The port used when none is specified
+   */
+  public static final int DEFAULT_PORT = 4000;
+
+  /**
+   * The longest line accepted when no limit is specified
+   */
+  public static final int DEFAULT_MAX_LINE = 256;
+
+  private static final int MAX_UNSENT_OUTPUT = 64 * 1024;
+
+  private final String worldName;
+  private final AdvWorldCache cache;
+  private final int maxLine;
+  private final AtomicInteger connections = new AtomicInteger();
+  private ServerSocketChannel server;
+  private Loop[] loops;
+  private int nextLoop;
+  private volatile boolean open;
+
+  /**
+   * Creates a server for the specified world. Nothing happens until start is called.
+   *
+   * @param worldName The name of the world the players play in
+   * @param cache The cache the world is taken from
+   * @param maxLine The longest line accepted, in bytes
+   * @usage AdvServer server = new AdvServer(worldName, cache, maxLine);
+   */
+  public AdvServer(String worldName, AdvWorldCache cache, int maxLine) {
+    this.worldName = worldName;
+    this.cache = cache;
+    this.maxLine = maxLine;
+  }
+
+  /* Method: start(port, threads) */
+
+  /**
+   * Loads the world, starts listening on the specified port and starts the threads that serve the
+   * connections.
+   *
+   * @param port The port to listen on, or 0 for any free port
+   * @param threads The number of selector threads
+   * @return The address the server listens on
+   * @usage InetSocketAddress address = server.start(port, threads);
+   */
+  public synchronized InetSocketAddress start(int port, int threads) throws IOException {
+    cache.get(worldName);
+    server = ServerSocketChannel.open();
+    server.bind(new InetSocketAddress(port), 1024);
+    server.configureBlocking(false);
+    loops = new Loop[Math.max(1, threads)];
+    for (int i = 0; i < loops.length; i++) {
+      loops[i] = new Loop();
+    }
+    server.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+    open = true;
+    for (int i = 0; i < loops.length; i++) {
+      Thread thread = new Thread(loops[i], "AdvServer-" + i);
+      thread.start();
+    }
+    return (InetSocketAddress) server.getLocalAddress();
+  }
+
+  /* Method: getConnectionCount() */
+
+  /**
+   * Returns the number of players connected.
+   *
+   * @return The number of open connections
+   * @usage int n = server.getConnectionCount();
+   */
+  public int getConnectionCount() {
+    return connections.get();
+  }
+
+  /* Method: close() */
+
+  /**
+   * Stops the server and closes every connection.
+   *
+   * @usage server.close();
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (!open) {
+      return;
+    }
+    open = false;
+    server.close();
+    for (Loop loop : loops) {
+      loop.selector.wakeup();
+    }
+  }
+
+  // hands the connections waiting to be accepted to the loops in turn
+  private void accept() throws IOException {
+    SocketChannel channel;
+    while ((channel = server.accept()) != null) {
+      channel.configureBlocking(false);
+      Loop loop = loops[nextLoop];
+      nextLoop = (nextLoop + 1) % loops.length;
+      loop.add(channel);
+    }
+  }
+
+  /* Private class: Loop */
+
+  /**
+   * This class is one selector thread. New connections are queued by the accepting loop and
+   * registered by the loop that serves them.
+   */
+
+  private class Loop implements Runnable {
+
+    private final Selector selector;
+    private final Queue<SocketChannel> added = new ConcurrentLinkedQueue<>();
+
+    Loop() throws IOException {
+      selector = Selector.open();
+    }
+
+    void add(SocketChannel channel) {
+      added.add(channel);
+      selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (open) {
+          selector.select();
+          registerAdded();
+          Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+          while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            handle(key);
+          }
+        }
+      } catch (IOException | ClosedSelectorException e) {
+        e.printStackTrace();
+      } finally {
+        shutdown();
+      }
+    }
+
+    private void registerAdded() {
+      SocketChannel channel;
+      while ((channel = added.poll()) != null) {
+        Connection connection = null;
+        try {
+          connection = new Connection(channel, channel.register(selector, SelectionKey.OP_READ));
+          connection.start();
+        } catch (IOException | RuntimeException e) {
+          if (connection != null) {
+            connection.close();
+          } else {
+            closeQuietly(channel);
+          }
+        }
+      }
+    }
+
+    private void handle(SelectionKey key) {
+      if (!key.isValid()) {
+        return;
+      }
+      if (key.isAcceptable()) {
+        try {
+          accept();
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+        return;
+      }
+      Connection connection = (Connection) key.attachment();
+      try {
+        if (key.isWritable()) {
+          connection.writeUnsent();
+        }
+        if (key.isValid() && key.isReadable()) {
+          connection.read();
+        }
+      } catch (IOException | RuntimeException e) {
+        connection.close();
+      }
+    }
+
+    private void shutdown() {
+      for (SelectionKey key : selector.keys()) {
+        if (key.attachment() instanceof Connection) {
+          ((Connection) key.attachment()).close();
+        }
+      }
+      try {
+        selector.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  /* Private class: Connection */
+
+  /**
+   * This class is the state of one player: the channel, the bytes of the line being received, the
+   * output the channel has not accepted yet and the game. It is also the output sink of the game.
+   */
+
+  private class Connection extends AdvOutput {
+
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    // holds a line of at most maxLine bytes and its line terminator
+    private final ByteBuffer input = ByteBuffer.allocate(maxLine + 2);
+    private ByteBuffer unsent;
+    private boolean discarding;
+    private boolean closing;
+    private boolean closed;
+    private Adventure game;
+
+    Connection(SocketChannel channel, SelectionKey key) {
+      this.channel = channel;
+      this.key = key;
+      key.attach(this);
+      connections.incrementAndGet();
+    }
+
+    void start() throws IOException {
+      game = new Adventure(cache.get(worldName), this);
+      game.start();
+    }
+
+    void read() throws IOException {
+      if (channel.read(input) < 0) {
+        close();
+        return;
+      }
+      byte[] bytes = input.array();
+      int end = input.position();
+      int lineStart = 0;
+      for (int i = 0; i < end && !closing; i++) {
+        if (bytes[i] == '\n') {
+          if (discarding) {
+            discarding = false;
+          } else {
+            int length = i - lineStart;
+            if (length > 0 && bytes[i - 1] == '\r') {
+              length--;
+            }
+            if (length > maxLine) {
+              // the buffer has room for a terminator of two bytes, so a line one byte longer than
+              // maxLine can end in it
+              rejectLine();
+            } else {
+              step(new String(bytes, lineStart, length, StandardCharsets.UTF_8));
+            }
+          }
+          lineStart = i + 1;
+        }
+      }
+      if (closing) {
+        input.clear();
+        return;
+      }
+      if (lineStart == 0 && !input.hasRemaining()) {
+        // no line terminator in a full buffer: drop the line up to its end
+        if (!discarding) {
+          discarding = true;
+          rejectLine();
+        }
+        input.clear();
+      } else {
+        input.limit(end).position(lineStart);
+        input.compact();
+      }
+    }
+
+    private void rejectLine() {
+      println("Line too long");
+      print("> ");
+      flush();
+    }
+
+    private void step(String line) {
+      game.step(line);
+      if (!game.isGameOn()) {
+        closing = true;
+        if (unsent == null) {
+          close();
+        }
+      }
+    }
+
+    @Override
+    protected void emit(byte[] bytes, int offset, int count) {
+      if (closed) {
+        return;
+      }
+      try {
+        if (unsent == null) {
+          ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, count);
+          channel.write(buffer);
+          if (buffer.hasRemaining()) {
+            unsent = ByteBuffer.allocate(buffer.remaining());
+            unsent.put(buffer).flip();
+          }
+        } else {
+          ByteBuffer buffer = ByteBuffer.allocate(unsent.remaining() + count);
+          buffer.put(unsent).put(bytes, offset, count).flip();
+          unsent = buffer;
+        }
+        if (unsent != null) {
+          // stop reading from a player who does not read the output
+          key.interestOps((unsent.remaining() > MAX_UNSENT_OUTPUT) ? SelectionKey.OP_WRITE
+              : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    void writeUnsent() throws IOException {
+      channel.write(unsent);
+      if (!unsent.hasRemaining()) {
+        unsent = null;
+        if (closing) {
+          close();
+        } else {
+          key.interestOps(SelectionKey.OP_READ);
+        }
+      } else if (unsent.remaining() <= MAX_UNSENT_OUTPUT && !closing) {
+        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+      }
+    }
+
+    void close() {
+      if (!closed) {
+        closed = true;
+        key.cancel();
+        closeQuietly(channel);
+        connections.decrementAndGet();
+      }
+    }
+  }
+
+  private static void closeQuietly(SocketChannel channel) {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      // nothing more can be done with this connection
+    }
+  }
+
+  /**
+   * Starts a server for the world named on the command line.
+   */
+  public static void main(String[] args) throws IOException {
+    int port = DEFAULT_PORT;
+    int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    int maxLine = DEFAULT_MAX_LINE;
+    boolean watch = false;
+    String name = null;
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "-port":
+          port = Integer.parseInt(args[++i]);
+          break;
+        case "-threads":
+          threads = Integer.parseInt(args[++i]);
+          break;
+        case "-maxLine":
+          maxLine = Integer.parseInt(args[++i]);
+          break;
+        case "-watch":
+          watch = true;
+          break;
+        default:
+          name = args[i];
+          break;
+      }
+    }
+    if (name == null) {
+      System.out.println(
+          "Usage: java AdvServer [-port n] [-threads n] [-maxLine n] [-watch] world");
+      return;
+    }
+    AdvWorldCache cache = AdvWorldCache.getShared();
+    if (watch) {
+      cache.startWatching();
+    }
+    AdvServer server = new AdvServer(name, cache, maxLine);
+    InetSocketAddress address = server.start(port, threads);
+    System.out.println("Serving " + name + " on port " + address.getPort());
+  }
+}
@@ -0,0 +1,380 @@
+/*
+ * File: AdvSessionStore.java
+ * --------------------------
+ * This file defines a store of game sessions that moves idle games
+ * out of memory and back.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/* Class: AdvSessionStore */
+
+/**
+ * This class holds the sessions of an AdvEngine by id and keeps only the active ones in memory. A
+ * session that has not been used for idleMillis is passivated: its game is written to a file in
+ * the store directory as an AdvSnapshot (the current room, the carried objects and the moved
+ * objects) and dropped from the heap. When the heap is fuller than heapThreshold, the least
+ * recently used half of the resident sessions is passivated as well. The next call to step for a
+ * passivated session reads the file back, and the caller cannot tell the difference.
+ *
+ * <p>Idle sessions are looked for by sweep, which a daemon thread runs every sweepMillis once
+ * startSweeping has been called. The number of resident sessions and the time taken to passivate
+ * and rehydrate games are published as an MXBean by register.
+ */
+
+public class AdvSessionStore implements AdvSessionStoreMXBean, Closeable {
+
+  private final AdvEngine engine;
+  private final Path dir;
+  private final long idleNanos;
+  private final double heapThreshold;
+  private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+  private final AtomicLong nextId = new AtomicLong();
+  private final AtomicInteger resident = new AtomicInteger();
+  private final AtomicLong passivations = new AtomicLong();
+  private final AtomicLong rehydrations = new AtomicLong();
+  private final AdvHistogram passivateNanos = new AdvHistogram();
+  private final AdvHistogram rehydrateNanos = new AdvHistogram();
+  private ScheduledExecutorService sweeper;
+
+  /**
+   * Creates a store for the sessions of an engine.
+   *
+   * @param engine The engine that creates and steps the games
+   * @param dir The directory passivated games are written to
+   * @param idleMillis The time after which an unused session is passivated
+   * @param heapThreshold The fraction of the maximum heap above which sessions are passivated
+   *     whether or not they are idle, or 1 to passivate only idle sessions
+   * @usage AdvSessionStore store = new AdvSessionStore(engine, dir, idleMillis, heapThreshold);
+   */
+  public AdvSessionStore(AdvEngine engine, Path dir, long idleMillis, double heapThreshold) {
+    this.engine = engine;
+    this.dir = dir;
+    this.idleNanos = idleMillis * 1000000L;
+    this.heapThreshold = heapThreshold;
+  }
+
+  /* Private class: Session */
+
+  /**
+   * This class is the entry of one session. Its game is null while it is passivated. Every access
+   * to the game is synchronized on the entry.
+   */
+
+  private static class Session {
+
+    private Adventure game;
+    private volatile long lastUsed = System.nanoTime();
+  }
+
+  /* Method: create() */
+
+  /**
+   * Creates and starts a new session.
+   *
+   * @return The id of the new session
+   * @usage String id = store.create();
+   */
+  public String create() {
+    String id = "s" + nextId.incrementAndGet();
+    Session session = new Session();
+    session.game = engine.newSession();
+    resident.incrementAndGet();
+    sessions.put(id, session);
+    return id;
+  }
+
+  /* Method: start(id) */
+
+  /**
+   * Returns the opening text of a session, as AdvEngine.start does.
+   *
+   * @param id The id of the session
+   * @return The output of the game up to the first prompt
+   * @usage String output = store.start(id);
+   */
+  public String start(String id) throws IOException {
+    Session session = getSession(id);
+    synchronized (session) {
+      return engine.start(activate(id, session));
+    }
+  }
+
+  /* Method: step(id, input) */
+
+  /**
+   * Executes one line of input for a session, reading its game back from disk first if it has been
+   * passivated.
+   *
+   * @param id The id of the session
+   * @param input The line typed by the player
+   * @return The output of the game up to the next prompt
+   * @usage String output = store.step(id, input);
+   */
+  public String step(String id, String input) throws IOException {
+    Session session = getSession(id);
+    synchronized (session) {
+      return engine.step(activate(id, session), input);
+    }
+  }
+
+  /* Method: remove(id) */
+
+  /**
+   * Removes a session from the store and deletes its file, if any.
+   *
+   * @param id The id of the session
+   * @usage store.remove(id);
+   */
+  public void remove(String id) throws IOException {
+    Session session = sessions.remove(id);
+    if (session != null) {
+      synchronized (session) {
+        if (session.game != null) {
+          session.game = null;
+          resident.decrementAndGet();
+        }
+        Files.deleteIfExists(path(id));
+      }
+    }
+  }
+
+  /* Method: isResident(id) */
+
+  /**
+   * Returns true if the game of a session is in memory.
+   *
+   * @param id The id of the session
+   * @return true if the session is resident
+   * @usage if (store.isResident(id)) . . .
+   */
+  public boolean isResident(String id) {
+    Session session = sessions.get(id);
+    if (session == null) {
+      return false;
+    }
+    synchronized (session) {
+      return session.game != null;
+    }
+  }
+
+  /* Method: sweep() */
+
+  /**
+   * Passivates the sessions that have been idle for longer than the idle timeout and, if the heap
+   * is fuller than the threshold, the least recently used half of the remaining resident ones.
+   *
+   * @return The number of sessions passivated
+   * @usage int n = store.sweep();
+   */
+  public int sweep() throws IOException {
+    long now = System.nanoTime();
+    List<Map.Entry<String, Session>> active = new ArrayList<>();
+    int count = 0;
+    for (Map.Entry<String, Session> e : sessions.entrySet()) {
+      if (now - e.getValue().lastUsed >= idleNanos) {
+        count += passivate(e.getKey(), e.getValue()) ? 1 : 0;
+      } else {
+        active.add(e);
+      }
+    }
+    if (isHeapUnderPressure()) {
+      active.sort((a, b) -> Long.compare(a.getValue().lastUsed, b.getValue().lastUsed));
+      for (Map.Entry<String, Session> e : active.subList(0, active.size() / 2)) {
+        count += passivate(e.getKey(), e.getValue()) ? 1 : 0;
+      }
+    }
+    return count;
+  }
+
+  /* Method: passivate(id) */
+
+  /**
+   * Writes the game of a session to disk and drops it from memory, whether or not it is idle.
+   *
+   * @param id The id of the session
+   * @return true if the session was resident
+   * @usage store.passivate(id);
+   */
+  public boolean passivate(String id) throws IOException {
+    return passivate(id, getSession(id));
+  }
+
+  private boolean passivate(String id, Session session) throws IOException {
+    synchronized (session) {
+      if (session.game == null || sessions.get(id) != session) {
+        return false;
+      }
+      long start = System.nanoTime();
+      Files.createDirectories(dir);
+      Path target = path(id);
+      Path tmp = dir.resolve(target.getFileName() + ".tmp");
+      try (OutputStream out = Files.newOutputStream(tmp)) {
+        session.game.saveState().write(out);
+      }
+      Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      session.game = null;
+      resident.decrementAndGet();
+      passivations.incrementAndGet();
+      passivateNanos.record(System.nanoTime() - start);
+      return true;
+    }
+  }
+
+  // returns the game of a session, reading it back from disk if it was passivated
+  private Adventure activate(String id, Session session) throws IOException {
+    session.lastUsed = System.nanoTime();
+    if (session.game == null) {
+      long start = System.nanoTime();
+      Path file = path(id);
+      Adventure game = engine.newSession();
+      try (InputStream in = Files.newInputStream(file)) {
+        game.restoreState(AdvSnapshot.read(in));
+      }
+      Files.delete(file);
+      session.game = game;
+      resident.incrementAndGet();
+      rehydrations.incrementAndGet();
+      rehydrateNanos.record(System.nanoTime() - start);
+    }
+    return session.game;
+  }
+
+  private Session getSession(String id) {
+    Session session = sessions.get(id);
+    if (session == null) {
+      throw new IllegalArgumentException("No session " + id);
+    }
+    return session;
+  }
+
+  private boolean isHeapUnderPressure() {
+    MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    return heapThreshold < 1 && heap.getMax() > 0
+        && heap.getUsed() > heapThreshold * heap.getMax();
+  }
+
+  private Path path(String id) {
+    return dir.resolve(id + ".session");
+  }
+
+  /* Method: startSweeping(sweepMillis) */
+
+  /**
+   * Runs sweep every sweepMillis milliseconds from a daemon thread, until close is called.
+   *
+   * @param sweepMillis The time between sweeps
+   * @usage store.startSweeping(sweepMillis);
+   */
+  public synchronized void startSweeping(long sweepMillis) {
+    if (sweeper != null) {
+      return;
+    }
+    sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "AdvSessionStore-sweep");
+      t.setDaemon(true);
+      return t;
+    });
+    sweeper.scheduleWithFixedDelay(() -> {
+      try {
+        sweep();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /* Method: close() */
+
+  /**
+   * Stops the sweeping thread. The sessions stay where they are.
+   *
+   * @usage store.close();
+   */
+  @Override
+  public synchronized void close() {
+    if (sweeper != null) {
+      sweeper.shutdownNow();
+      sweeper = null;
+    }
+  }
+
+  /* Method: register() */
+
+  /**
+   * Publishes the metrics of this store on the platform MBean server as
+   * Adventure:type=SessionStore,world=name.
+   *
+   * @return The name the store was registered under
+   * @usage ObjectName name = store.register();
+   */
+  public ObjectName register() throws JMException {
+    ObjectName name = new ObjectName("Adventure:type=SessionStore,world="
+        + ObjectName.quote(engine.getWorld().getName()));
+    if (ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    }
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+    return name;
+  }
+
+  @Override
+  public int getResidentSessions() {
+    return resident.get();
+  }
+
+  @Override
+  public int getPassivatedSessions() {
+    return sessions.size() - resident.get();
+  }
+
+  @Override
+  public long getPassivations() {
+    return passivations.get();
+  }
+
+  @Override
+  public long getRehydrations() {
+    return rehydrations.get();
+  }
+
+  @Override
+  public long getPassivateP50Nanos() {
+    return passivateNanos.getPercentile(50);
+  }
+
+  @Override
+  public long getPassivateP99Nanos() {
+    return passivateNanos.getPercentile(99);
+  }
+
+  @Override
+  public long getRehydrateP50Nanos() {
+    return rehydrateNanos.getPercentile(50);
+  }
+
+  @Override
+  public long getRehydrateP99Nanos() {
+    return rehydrateNanos.getPercentile(99);
+  }
+}
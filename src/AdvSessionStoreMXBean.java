@@ -0,0 +1,55 @@
+/*
+ * File: AdvSessionStoreMXBean.java
+ * --------------------------------
+ * This file defines the management interface through which an
+ * AdvSessionStore is published over JMX.
+ */
+
+/* Interface: AdvSessionStoreMXBean */
+
+/**
+ * This interface is the JMX view of an AdvSessionStore. Latencies are in nanoseconds.
+ */
+
+public interface AdvSessionStoreMXBean {
+
+  /**
+   * Returns the number of sessions whose games are in memory.
+   */
+  int getResidentSessions();
+
+  /**
+   * Returns the number of sessions whose games have been written to disk.
+   */
+  int getPassivatedSessions();
+
+  /**
+   * Returns the number of times a game has been written to disk.
+   */
+  long getPassivations();
+
+  /**
+   * Returns the number of times a game has been read back from disk.
+   */
+  long getRehydrations();
+
+  /**
+   * Returns the median time taken to write a game to disk.
+   */
+  long getPassivateP50Nanos();
+
+  /**
+   * Returns the 99th percentile of the time taken to write a game to disk.
+   */
+  long getPassivateP99Nanos();
+
+  /**
+   * Returns the median time taken to read a game back from disk.
+   */
+  long getRehydrateP50Nanos();
+
+  /**
+   * Returns the 99th percentile of the time taken to read a game back from disk.
+   */
+  long getRehydrateP99Nanos();
+}
@@ -0,0 +1,221 @@
+/*
+ * File: AdvSnapshot.java
+ * ----------------------
+ * This file defines a compact snapshot of the state of one
+ * Adventure game.
+ */
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/* Class: AdvSnapshot */
+
+/**
+ * This class records the state of one game in a form that does not depend on the rest of the
+ * game: the current room, the ids of the carried objects in the order they were taken, and every
+ * other object the player has moved, with its room, in the order of the moves. Everything else
+ * follows from the world.
+ *
+ * <p>A snapshot also carries the number of commands the game had executed when it was taken, so
+ * that a journal knows which commands to replay after it.
+ */
+
+public class AdvSnapshot {
+
+  private static final int MAGIC = 0x41445653;
+  private static final int VERSION = 1;
+
+  private final long sequence;
+  private final int roomNumber;
+  private final boolean gameOn;
+  private final boolean confirmingQuit;
+  private final int[] inventory;
+  private final int[] movedObjects;
+  private final int[] movedRooms;
+
+  /**
+   * Creates a snapshot from its parts. Room number 0 means the game has reached its end.
+   *
+   * @param sequence The number of commands executed before the snapshot
+   * @param roomNumber The number of the current room
+   * @param gameOn true if the game is still running
+   * @param confirmingQuit true if the game is waiting for the answer to "Are you sure"
+   * @param inventory The ids of the carried objects, -1 for an empty slot
+   * @param movedObjects The ids of the objects that are not in their initial room
+   * @param movedRooms The room number of each of those objects, in the same order
+   * @usage AdvSnapshot s = new AdvSnapshot(seq, room, on, quit, inventory, objects, rooms);
+   */
+  public AdvSnapshot(long sequence, int roomNumber, boolean gameOn, boolean confirmingQuit,
+      int[] inventory, int[] movedObjects, int[] movedRooms) {
+    this.sequence = sequence;
+    this.roomNumber = roomNumber;
+    this.gameOn = gameOn;
+    this.confirmingQuit = confirmingQuit;
+    this.inventory = inventory;
+    this.movedObjects = movedObjects;
+    this.movedRooms = movedRooms;
+  }
+
+  /* Method: withSequence(sequence) */
+
+  /**
+   * Returns a copy of this snapshot with a different command count.
+   *
+   * @param sequence The number of commands executed before the snapshot
+   * @return The new snapshot
+   * @usage snapshot = snapshot.withSequence(seq);
+   */
+  public AdvSnapshot withSequence(long sequence) {
+    return new AdvSnapshot(sequence, roomNumber, gameOn, confirmingQuit, inventory, movedObjects,
+        movedRooms);
+  }
+
+  /* Method: getSequence() */
+
+  /**
+   * Returns the number of commands the game had executed when the snapshot was taken.
+   *
+   * @return The command count
+   * @usage long seq = snapshot.getSequence();
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /* Method: getRoomNumber() */
+
+  /**
+   * Returns the number of the current room, or 0 if the game has reached its end.
+   *
+   * @return The current room number
+   * @usage int room = snapshot.getRoomNumber();
+   */
+  public int getRoomNumber() {
+    return roomNumber;
+  }
+
+  /* Method: isGameOn() */
+
+  /**
+   * Returns true if the game was still running.
+   *
+   * @return true if the game is running
+   * @usage if (snapshot.isGameOn()) . . .
+   */
+  public boolean isGameOn() {
+    return gameOn;
+  }
+
+  /* Method: isConfirmingQuit() */
+
+  /**
+   * Returns true if the game was waiting for the player to confirm QUIT.
+   *
+   * @return true if the game is waiting for a Y or N
+   * @usage if (snapshot.isConfirmingQuit()) . . .
+   */
+  public boolean isConfirmingQuit() {
+    return confirmingQuit;
+  }
+
+  /* Method: getInventory() */
+
+  /**
+   * Returns the ids of the carried objects in the order they were taken. The array is shared and
+   * must not be changed.
+   *
+   * @return The carried object ids
+   * @usage int[] inventory = snapshot.getInventory();
+   */
+  public int[] getInventory() {
+    return inventory;
+  }
+
+  /* Method: getMovedObjects() */
+
+  /**
+   * Returns the ids of the objects that lie in a room other than their initial one. The array is
+   * shared and must not be changed.
+   *
+   * @return The moved object ids
+   * @usage int[] objects = snapshot.getMovedObjects();
+   */
+  public int[] getMovedObjects() {
+    return movedObjects;
+  }
+
+  /* Method: getMovedRooms() */
+
+  /**
+   * Returns the room number of each moved object, in the order of getMovedObjects. The array is
+   * shared and must not be changed.
+   *
+   * @return The room numbers of the moved objects
+   * @usage int[] rooms = snapshot.getMovedRooms();
+   */
+  public int[] getMovedRooms() {
+    return movedRooms;
+  }
+
+  /* Method: write(os) */
+
+  /**
+   * Writes the snapshot in its binary form.
+   *
+   * @param os The stream to write to
+   * @usage snapshot.write(os);
+   */
+  public void write(OutputStream os) throws IOException {
+    DataOutputStream out = new DataOutputStream(os);
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeLong(sequence);
+    out.writeInt(roomNumber);
+    out.writeByte((gameOn ? 1 : 0) | (confirmingQuit ? 2 : 0));
+    out.writeInt(inventory.length);
+    for (int id : inventory) {
+      out.writeInt(id);
+    }
+    out.writeInt(movedObjects.length);
+    for (int i = 0; i < movedObjects.length; i++) {
+      out.writeInt(movedObjects[i]);
+      out.writeInt(movedRooms[i]);
+    }
+    out.flush();
+  }
+
+  /* Static method: read(is) */
+
+  /**
+   * Reads a snapshot written by write.
+   *
+   * @param is The stream to read from
+   * @return The snapshot
+   * @usage AdvSnapshot snapshot = AdvSnapshot.read(is);
+   */
+  public static AdvSnapshot read(InputStream is) throws IOException {
+    DataInputStream in = new DataInputStream(is);
+    if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+      throw new IOException("not a snapshot of this version");
+    }
+    long sequence = in.readLong();
+    int roomNumber = in.readInt();
+    int flags = in.readByte();
+    int[] inventory = new int[in.readInt()];
+    for (int i = 0; i < inventory.length; i++) {
+      inventory[i] = in.readInt();
+    }
+    int moved = in.readInt();
+    int[] movedObjects = new int[moved];
+    int[] movedRooms = new int[moved];
+    for (int i = 0; i < moved; i++) {
+      movedObjects[i] = in.readInt();
+      movedRooms[i] = in.readInt();
+    }
+    return new AdvSnapshot(sequence, roomNumber, (flags & 1) != 0, (flags & 2) != 0, inventory,
+        movedObjects, movedRooms);
+  }
+}
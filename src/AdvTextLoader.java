@@ -0,0 +1,551 @@
+/*
+ * File: AdvTextLoader.java
+ * ------------------------
+ * This file defines the loader that reads the text data files of
+ * an Adventure world in parallel.
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/* Class: AdvTextLoader */
+
+/**
+ * This class reads the Rooms, Objects and Synonyms files of a world. The three files are read at
+ * the same time, each one as a single byte array. The rooms file is cut into one block per room
+ * on the blank line that follows each motion table, and the blocks are parsed in parallel on the
+ * common fork-join pool. Parsing works directly on the bytes: the only strings created are the
+ * names, descriptions, directions and keys that end up in the world.
+ *
+ * <p>The format is the one read by AdvRoom.readFromFile and AdvObject.readFromFile. A world does
+ * not need an Objects or Synonyms file; a missing one counts as empty. Every error is reported as
+ * an AdvFormatException that gives the file name and line number, including an object whose
+ * initial room does not exist, a motion entry that leads to a room that does not exist and a chain
+ * of FORCED exits without keys that loops back on itself.
+ */
+
+public class AdvTextLoader {
+
+  // number of room blocks below which a task parses its blocks itself
+  private static final int SPLIT_THRESHOLD = 256;
+
+  private AdvTextLoader() {
+  }
+
+  /* Static method: load(name) */
+
+  /**
+   * Reads the world with the specified name from the files name + "Rooms.txt", name +
+   * "Objects.txt" and name + "Synonyms.txt".
+   *
+   * @param name The name of the adventure
+   * @return The loaded world
+   * @usage AdvWorld world = AdvTextLoader.load(name);
+   */
+  public static AdvWorld load(String name) throws IOException {
+    CompletableFuture<RoomList> rooms = read(name + "Rooms.txt", false)
+        .thenApply(AdvTextLoader::parseRooms);
+    CompletableFuture<ObjectList> objects = read(name + "Objects.txt", true)
+        .thenApply(AdvTextLoader::parseObjects);
+    CompletableFuture<Map<String, String>> synonyms = read(name + "Synonyms.txt", true)
+        .thenApply(AdvTextLoader::parseSynonyms);
+    try {
+      CompletableFuture.allOf(rooms, objects, synonyms).join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) cause).getCause();
+      }
+      throw e;
+    }
+    SortedMap<Integer, AdvRoom> roomMap = new TreeMap<>();
+    RoomList roomList = rooms.join();
+    for (int i = 0; i < roomList.rooms.length; i++) {
+      AdvRoom room = roomList.rooms[i];
+      if (roomMap.put(room.getRoomNumber(), room) != null) {
+        throw new AdvFormatException(name + "Rooms.txt", roomList.lines[i],
+            "room " + room.getRoomNumber() + " is defined more than once");
+      }
+    }
+    if (roomMap.isEmpty()) {
+      throw new AdvFormatException(name + "Rooms.txt", 1, "the file contains no rooms");
+    }
+    // the room numbers in increasing order, searched without boxing since a world may have
+    // millions of exits
+    int[] numbers = new int[roomMap.size()];
+    AdvRoom[] sorted = roomMap.values().toArray(new AdvRoom[numbers.length]);
+    for (int i = 0; i < numbers.length; i++) {
+      numbers[i] = sorted[i].getRoomNumber();
+    }
+    for (int i = 0; i < roomList.rooms.length; i++) {
+      AdvRoom room = roomList.rooms[i];
+      AdvMotionTableEntry[] motionTable = room.getMotionTable();
+      for (int j = 0; j < motionTable.length; j++) {
+        int destination = motionTable[j].getDestinationRoom();
+        if (destination != 0 && Arrays.binarySearch(numbers, destination) < 0) {
+          throw new AdvFormatException(name + "Rooms.txt", roomList.motionLines[i] + j,
+              "room " + room.getRoomNumber() + ": " + motionTable[j].getDirection()
+                  + " leads to room " + destination + ", which does not exist");
+        }
+      }
+    }
+    checkForcedLoops(name, roomList, numbers, sorted);
+    ObjectList objectList = objects.join();
+    for (int i = 0; i < objectList.objects.size(); i++) {
+      AdvObject object = objectList.objects.get(i);
+      if (!roomMap.containsKey(object.getInitialLocation())) {
+        throw new AdvFormatException(name + "Objects.txt", objectList.lines[i],
+            "object " + object.getName() + " is in room " + object.getInitialLocation()
+                + ", which does not exist");
+      }
+    }
+    return AdvWorld.create(name, roomMap, objectList.objects, synonyms.join());
+  }
+
+  // rejects a chain of FORCED exits without keys that comes back to one of its rooms, which would
+  // move the player forever; the rooms are given in room-number order, and every destination is
+  // known to exist
+  private static void checkForcedLoops(String name, RoomList roomList, int[] numbers,
+      AdvRoom[] sorted) throws AdvFormatException {
+    byte[] state = new byte[sorted.length]; // 0 = not seen, 1 = on the current chain, 2 = ends
+    int[] path = new int[16];
+    for (int first = 0; first < sorted.length; first++) {
+      int length = 0;
+      int room = first;
+      while (room >= 0 && state[room] == 0) {
+        AdvMotionTableEntry[] motionTable = sorted[room].getMotionTable();
+        if (motionTable.length == 0 || !motionTable[0].getDirection().equals("FORCED")
+            || motionTable[0].getKeyName() != null) {
+          break;
+        }
+        state[room] = 1;
+        if (length == path.length) {
+          path = Arrays.copyOf(path, 2 * length);
+        }
+        path[length++] = room;
+        int destination = motionTable[0].getDestinationRoom();
+        room = (destination == 0) ? -1 : Arrays.binarySearch(numbers, destination);
+      }
+      if (room >= 0 && state[room] == 1) {
+        int i = 0;
+        while (roomList.rooms[i] != sorted[room]) {
+          i++;
+        }
+        throw new AdvFormatException(name + "Rooms.txt", roomList.motionLines[i],
+            "room " + numbers[room] + ": FORCED exits without keys lead back to this room");
+      }
+      while (length > 0) {
+        state[path[--length]] = 2;
+      }
+    }
+  }
+
+  private static CompletableFuture<Text> read(String fileName, boolean optional) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return new Text(fileName, Files.readAllBytes(Paths.get(fileName)));
+      } catch (NoSuchFileException e) {
+        if (optional) {
+          return new Text(fileName, new byte[0]);
+        }
+        throw new UncheckedIOException(e);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }, ForkJoinPool.commonPool());
+  }
+
+  /* Rooms */
+
+  private static RoomList parseRooms(Text text) {
+    // cut the file into blocks: header and description up to "-----", then the motion table up
+    // to the next blank line
+    int[] starts = new int[64];
+    int[] lines = new int[64];
+    int count = 0;
+    int pos = 0;
+    int line = 1;
+    while (pos < text.length()) {
+      int end = text.lineEnd(pos);
+      if (text.isBlank(pos, end)) {
+        pos = end + 1;
+        line++;
+        continue;
+      }
+      if (count == starts.length) {
+        starts = Arrays.copyOf(starts, 2 * count);
+        lines = Arrays.copyOf(lines, 2 * count);
+      }
+      starts[count] = pos;
+      lines[count] = line;
+      count++;
+      boolean inMotionTable = false;
+      while (pos < text.length()) {
+        end = text.lineEnd(pos);
+        if (inMotionTable && text.isBlank(pos, end)) {
+          break;
+        }
+        if (!inMotionTable && text.isSeparator(pos, end)) {
+          inMotionTable = true;
+        }
+        pos = end + 1;
+        line++;
+      }
+    }
+    AdvRoom[] rooms = new AdvRoom[count];
+    int[] motionLines = new int[count];
+    ForkJoinPool.commonPool().invoke(
+        new RoomTask(text, starts, lines, rooms, motionLines, 0, count));
+    return new RoomList(rooms, lines, motionLines);
+  }
+
+  /* Private class: RoomTask */
+
+  /**
+   * This task parses a range of room blocks, splitting the range in two while it is large.
+   */
+
+  private static class RoomTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Text text;
+    private final int[] starts;
+    private final int[] lines;
+    private final AdvRoom[] rooms;
+    private final int[] motionLines;
+    private final int from;
+    private final int to;
+
+    RoomTask(Text text, int[] starts, int[] lines, AdvRoom[] rooms, int[] motionLines, int from,
+        int to) {
+      this.text = text;
+      this.starts = starts;
+      this.lines = lines;
+      this.rooms = rooms;
+      this.motionLines = motionLines;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= SPLIT_THRESHOLD) {
+        for (int i = from; i < to; i++) {
+          int end = (i + 1 < rooms.length) ? starts[i + 1] : text.length();
+          rooms[i] = parseRoom(text, starts[i], end, lines[i], motionLines, i);
+        }
+      } else {
+        int mid = (from + to) >>> 1;
+        invokeAll(new RoomTask(text, starts, lines, rooms, motionLines, from, mid),
+            new RoomTask(text, starts, lines, rooms, motionLines, mid, to));
+      }
+    }
+  }
+
+  // parses one room block and stores the line of its first motion entry in motionLines[index]
+  private static AdvRoom parseRoom(Text text, int pos, int limit, int line, int[] motionLines,
+      int index) {
+    int end = text.lineEnd(pos);
+    int number = text.parseInt(pos, end, line, "expected a room number");
+    pos = end + 1;
+    line++;
+    if (pos >= limit) {
+      throw text.error(line, "room " + number + " has no name");
+    }
+    end = text.lineEnd(pos);
+    String name = text.string(pos, end);
+    pos = end + 1;
+    line++;
+
+    // count the description lines and the motion table entries before creating the arrays
+    int descriptionStart = pos;
+    int descriptionCount = 0;
+    while (true) {
+      if (pos >= limit) {
+        throw text.error(line, "the description of room " + number + " does not end with -----");
+      }
+      end = text.lineEnd(pos);
+      boolean separator = text.isSeparator(pos, end);
+      pos = end + 1;
+      line++;
+      if (separator) {
+        break;
+      }
+      descriptionCount++;
+    }
+    int motionStart = pos;
+    int motionLine = line;
+    motionLines[index] = motionLine;
+    int motionCount = 0;
+    while (pos < limit) {
+      end = text.lineEnd(pos);
+      if (text.isBlank(pos, end)) {
+        break;
+      }
+      motionCount++;
+      pos = end + 1;
+    }
+
+    String[] description = new String[descriptionCount];
+    pos = descriptionStart;
+    for (int i = 0; i < descriptionCount; i++) {
+      end = text.lineEnd(pos);
+      description[i] = text.string(pos, end);
+      pos = end + 1;
+    }
+    AdvMotionTableEntry[] motionTable = new AdvMotionTableEntry[motionCount];
+    pos = motionStart;
+    line = motionLine;
+    for (int i = 0; i < motionCount; i++) {
+      end = text.lineEnd(pos);
+      motionTable[i] = text.parseMotion(pos, end, line);
+      pos = end + 1;
+      line++;
+    }
+    return AdvRoom.create(number, name, description, motionTable);
+  }
+
+  /* Objects and synonyms */
+
+  private static ObjectList parseObjects(Text text) {
+    ObjectList result = new ObjectList();
+    int[] lines = new int[16];
+    int pos = 0;
+    int line = 1;
+    while (pos < text.length()) {
+      int end = text.lineEnd(pos);
+      if (text.isBlank(pos, end)) {
+        pos = end + 1;
+        line++;
+        continue;
+      }
+      String name = text.string(pos, end);
+      pos = end + 1;
+      line++;
+      if (pos >= text.length()) {
+        throw text.error(line, "object " + name + " has no description");
+      }
+      end = text.lineEnd(pos);
+      String description = text.string(pos, end);
+      pos = end + 1;
+      line++;
+      if (pos >= text.length()) {
+        throw text.error(line, "object " + name + " has no room number");
+      }
+      end = text.lineEnd(pos);
+      int room = text.parseInt(pos, end, line, "expected the room number of object " + name);
+      if (result.objects.size() == lines.length) {
+        lines = Arrays.copyOf(lines, 2 * lines.length);
+      }
+      lines[result.objects.size()] = line;
+      result.objects.add(AdvObject.create(name, description, room));
+      pos = end + 1;
+      line++;
+    }
+    result.lines = lines;
+    return result;
+  }
+
+  private static Map<String, String> parseSynonyms(Text text) {
+    Map<String, String> synonyms = new HashMap<>();
+    int pos = 0;
+    int line = 1;
+    while (pos < text.length()) {
+      int end = text.lineEnd(pos);
+      if (!text.isBlank(pos, end)) {
+        int eq = text.indexOf((byte) '=', pos, end);
+        if (eq < 0) {
+          throw text.error(line, "expected WORD=SYNONYM");
+        }
+        synonyms.put(text.string(pos, eq), text.string(eq + 1, end));
+      }
+      pos = end + 1;
+      line++;
+    }
+    return synonyms;
+  }
+
+  /* Private class: RoomList */
+
+  /**
+   * This class holds the rooms read from a file together with the line on which each one starts
+   * and the line of its first motion table entry.
+   */
+
+  private static class RoomList {
+
+    private final AdvRoom[] rooms;
+    private final int[] lines;
+    private final int[] motionLines;
+
+    RoomList(AdvRoom[] rooms, int[] lines, int[] motionLines) {
+      this.rooms = rooms;
+      this.lines = lines;
+      this.motionLines = motionLines;
+    }
+  }
+
+  /* Private class: ObjectList */
+
+  /**
+   * This class holds the objects read from a file together with the line of each room number.
+   */
+
+  private static class ObjectList {
+
+    private final List<AdvObject> objects = new ArrayList<>();
+    private int[] lines = new int[0];
+  }
+
+  /* Private class: Text */
+
+  /**
+   * This class wraps the bytes of one data file and provides the line-level operations used by the
+   * parsers. Line ends exclude the newline; a carriage return before it is ignored.
+   */
+
+  private static class Text {
+
+    private final String fileName;
+    private final byte[] data;
+
+    Text(String fileName, byte[] data) {
+      this.fileName = fileName;
+      this.data = data;
+    }
+
+    int length() {
+      return data.length;
+    }
+
+    // the position of the newline that ends the line starting at pos, or the end of the data
+    int lineEnd(int pos) {
+      int end = indexOf((byte) '\n', pos, data.length);
+      return (end < 0) ? data.length : end;
+    }
+
+    int indexOf(byte b, int from, int to) {
+      for (int i = from; i < to; i++) {
+        if (data[i] == b) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    boolean isBlank(int from, int to) {
+      for (int i = from; i < to; i++) {
+        if (!isSpace(data[i])) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    boolean isSeparator(int from, int to) {
+      while (from < to && isSpace(data[from])) {
+        from++;
+      }
+      while (to > from && isSpace(data[to - 1])) {
+        to--;
+      }
+      if (to - from != 5) {
+        return false;
+      }
+      for (int i = from; i < to; i++) {
+        if (data[i] != '-') {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    String string(int from, int to) {
+      if (to > from && data[to - 1] == '\r') {
+        to--;
+      }
+      return new String(data, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    int parseInt(int from, int to, int line, String message) {
+      while (from < to && isSpace(data[from])) {
+        from++;
+      }
+      while (to > from && isSpace(data[to - 1])) {
+        to--;
+      }
+      int value = parseDigits(from, to);
+      if (value < 0) {
+        throw error(line, message);
+      }
+      return value;
+    }
+
+    // parses a non-negative decimal number filling the whole range, or returns -1
+    private int parseDigits(int from, int to) {
+      if (from == to || to - from > 9) {
+        return -1;
+      }
+      int value = 0;
+      for (int i = from; i < to; i++) {
+        if (data[i] < '0' || data[i] > '9') {
+          return -1;
+        }
+        value = 10 * value + (data[i] - '0');
+      }
+      return value;
+    }
+
+    AdvMotionTableEntry parseMotion(int from, int to, int line) {
+      while (from < to && isSpace(data[from])) {
+        from++;
+      }
+      int dirEnd = from;
+      while (dirEnd < to && !isSpace(data[dirEnd])) {
+        dirEnd++;
+      }
+      int destStart = dirEnd;
+      while (destStart < to && isSpace(data[destStart])) {
+        destStart++;
+      }
+      int destEnd = destStart;
+      while (destEnd < to && !isSpace(data[destEnd])) {
+        destEnd++;
+      }
+      if (destStart == destEnd) {
+        throw error(line, "expected a direction and a room number");
+      }
+      int slash = indexOf((byte) '/', destStart, destEnd);
+      int room = parseDigits(destStart, (slash < 0) ? destEnd : slash);
+      if (room < 0 || slash == destEnd - 1) {
+        throw error(line, "expected a room number or ROOM/KEY after the direction");
+      }
+      String key = (slash < 0) ? null : string(slash + 1, destEnd);
+      return new AdvMotionTableEntry(string(from, dirEnd), room, key);
+    }
+
+    UncheckedIOException error(int line, String message) {
+      return new UncheckedIOException(new AdvFormatException(fileName, line, message));
+    }
+
+    private static boolean isSpace(byte b) {
+      return b == ' ' || b == '\t' || b == '\r' || b == '\f';
+    }
+  }
+}
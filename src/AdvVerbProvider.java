@@ -0,0 +1,33 @@
+/*
+ * File: AdvVerbProvider.java
+ * --------------------------
+ * This file defines the service interface through which new verbs
+ * are added to the Adventure game.
+ */
+
+import java.util.Map;
+
+/* Interface: AdvVerbProvider */
+
+/**
+ * This interface lets a library add verbs to every world without changing the Adventure class.
+ * Implementations are found with java.util.ServiceLoader, so a provider is installed by putting
+ * its class on the class path and naming it in META-INF/services/AdvVerbProvider. The verbs are
+ * added to the vocabulary of each world as it is loaded, and a provided verb takes precedence over
+ * a built-in verb or direction with the same spelling. AdvSampleVerbProvider is an example.
+ */
+
+public interface AdvVerbProvider {
+
+  /* Method: getVerbs() */
+
+  /**
+   * Returns the verbs of this provider, mapped to the commands that implement them. The verbs must
+   * be in upper case. The commands are shared by every game, so they must not keep any state of
+   * their own.
+   *
+   * @return A map from verb to command
+   * @usage Map<String, AdvCommand> verbs = provider.getVerbs();
+   */
+  Map<String, AdvCommand> getVerbs();
+}
@@ -0,0 +1,431 @@
+/*
+ * File: AdvVocabulary.java
+ * ------------------------
+ * This file defines the vocabulary of an Adventure world and the
+ * tokenizer that maps player input onto it.
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/* Class: AdvVocabulary */
+
+/**
+ * This class holds every word a player can use in a world: the built-in verbs, the directions of
+ * the motion tables, the object names and the synonyms. Each distinct word is interned once as a
+ * token, a small integer; a synonym is simply a second spelling of the token of the word it stands
+ * for. The spellings are stored in a trie flattened into arrays, so the tokenizer can look a word
+ * up while scanning the input, without creating strings or computing hash codes.
+ *
+ * <p>Besides its spelling, a token records the direction token it has in the motion graph and the
+ * id of the first object it names, or -1 for either if it has none. Objects that share a name are
+ * chained in id order, so the game can pick whichever of them the player can reach.
+ *
+ * <p>The tokenizer also accepts an abbreviation: a word that is not in the vocabulary but starts
+ * exactly one token, such as INV for INVENTORY or NOR for NORTH, stands for that token. Every trie
+ * node records the token its prefix abbreviates, if there is just one, so an abbreviation costs no
+ * more than a word. For words that match nothing, getSuggestion finds the closest spelling by
+ * edit distance with a search of the same trie. The vocabulary never changes after it is built, so
+ * all the games of a world share it.
+ */
+
+public class AdvVocabulary {
+
+  /**
+   * The verbs every world understands
+   */
+  public static final String[] VERBS = {"QUIT", "LOOK", "INVENTORY", "TAKE", "DROP", "HELP"};
+
+  private static final int AMBIGUOUS = -2;
+
+  private final String[] words;
+  private final int[] directions;
+  private final int[] objects;
+  // the id of the next object with the same name, or -1, indexed by object id
+  private final int[] nextObject;
+
+  // the trie: the children of node n are childChar/childNode[childStart[n] .. childStart[n + 1])
+  private final int[] childStart;
+  private final char[] childChar;
+  private final int[] childNode;
+  private final int[] nodeToken;
+  // the token of the word of each node or, if it is no word, the token its prefix abbreviates, or
+  // -1 if it starts no token or several
+  private final int[] prefixToken;
+
+  /**
+   * Builds the vocabulary of a world.
+   *
+   * @param graph The motion graph of the world
+   * @param objectList The objects of the world, in id order
+   * @param synonyms The synonym table of the world
+   * @param extraVerbs Further verbs, such as those of AdvVerbProvider services
+   * @usage AdvVocabulary vocabulary = new AdvVocabulary(graph, objects, synonyms, extraVerbs);
+   */
+  public AdvVocabulary(AdvMotionGraph graph, List<AdvObject> objectList,
+      Map<String, String> synonyms, Collection<String> extraVerbs) {
+    Map<String, Integer> tokens = new HashMap<>();
+    List<String> wordList = new ArrayList<>();
+    for (String verb : VERBS) {
+      intern(verb, tokens, wordList);
+    }
+    for (String verb : extraVerbs) {
+      intern(verb, tokens, wordList);
+    }
+    for (int dir = 0; dir < graph.getDirectionCount(); dir++) {
+      intern(graph.getDirectionName(dir), tokens, wordList);
+    }
+    for (AdvObject object : objectList) {
+      intern(object.getName(), tokens, wordList);
+    }
+    Map<String, Integer> spellings = new TreeMap<>(tokens);
+    for (Map.Entry<String, String> e : synonyms.entrySet()) {
+      spellings.put(e.getKey(), intern(e.getValue(), tokens, wordList));
+    }
+
+    words = wordList.toArray(new String[wordList.size()]);
+    directions = new int[words.length];
+    objects = new int[words.length];
+    for (int i = 0; i < words.length; i++) {
+      directions[i] = graph.getDirectionId(words[i]);
+      objects[i] = -1;
+    }
+    nextObject = new int[objectList.size()];
+    for (int i = objectList.size() - 1; i >= 0; i--) {
+      int token = tokens.get(objectList.get(i).getName());
+      nextObject[i] = objects[token];
+      objects[token] = i;
+    }
+
+    // build the trie from the sorted spellings, level by level, so the children of each node are
+    // contiguous and sorted
+    TrieBuilder builder = new TrieBuilder();
+    for (Map.Entry<String, Integer> e : spellings.entrySet()) {
+      builder.add(e.getKey(), e.getValue());
+    }
+    int nodes = builder.size();
+    childStart = new int[nodes + 1];
+    childChar = new char[nodes - 1];
+    childNode = new int[nodes - 1];
+    nodeToken = new int[nodes];
+    builder.flatten(childStart, childChar, childNode, nodeToken);
+    prefixToken = new int[nodes];
+    // children are numbered after their parents, so a backward pass sees every subtree first
+    for (int n = nodes - 1; n >= 0; n--) {
+      int token = nodeToken[n];
+      for (int c = childStart[n]; c < childStart[n + 1] && token != AMBIGUOUS; c++) {
+        int child = prefixToken[childNode[c]];
+        token = (token == -1 || token == child) ? child : (child == -1) ? token : AMBIGUOUS;
+      }
+      prefixToken[n] = token;
+    }
+    // a whole word always stands for itself, even when it also starts other words
+    for (int n = 0; n < nodes; n++) {
+      if (nodeToken[n] >= 0) {
+        prefixToken[n] = nodeToken[n];
+      } else if (prefixToken[n] == AMBIGUOUS) {
+        prefixToken[n] = -1;
+      }
+    }
+  }
+
+  private static int intern(String word, Map<String, Integer> tokens, List<String> wordList) {
+    Integer token = tokens.get(word);
+    if (token == null) {
+      token = wordList.size();
+      tokens.put(word, token);
+      wordList.add(word);
+    }
+    return token;
+  }
+
+  /* Method: size() */
+
+  /**
+   * Returns the number of tokens in the vocabulary.
+   *
+   * @return The number of tokens
+   * @usage int n = vocabulary.size();
+   */
+  public int size() {
+    return words.length;
+  }
+
+  /* Method: getWord(token) */
+
+  /**
+   * Returns the canonical spelling of a token, which is the word a synonym stands for.
+   *
+   * @param token The token
+   * @return The word for that token
+   * @usage String word = vocabulary.getWord(token);
+   */
+  public String getWord(int token) {
+    return words[token];
+  }
+
+  /* Method: getDirection(token) */
+
+  /**
+   * Returns the direction token in the motion graph that corresponds to a token, or -1 if no room
+   * has an exit in that direction.
+   *
+   * @param token The token
+   * @return The direction token, or -1
+   * @usage int dir = vocabulary.getDirection(token);
+   */
+  public int getDirection(int token) {
+    return directions[token];
+  }
+
+  /* Method: getObject(token) */
+
+  /**
+   * Returns the id of the first object named by a token, or -1 if it names no object. The other
+   * objects with the same name follow through getNextObject.
+   *
+   * @param token The token
+   * @return The object id, or -1
+   * @usage int id = vocabulary.getObject(token);
+   */
+  public int getObject(int token) {
+    return objects[token];
+  }
+
+  /* Method: getNextObject(id) */
+
+  /**
+   * Returns the id of the next object with the same name as an object, in id order, or -1 if
+   * there is none.
+   *
+   * @param id The id of an object
+   * @return The id of the next object with its name, or -1
+   * @usage for (int id = vocabulary.getObject(token); id >= 0; id = vocabulary.getNextObject(id))
+   */
+  public int getNextObject(int id) {
+    return nextObject[id];
+  }
+
+  /* Method: lookup(s) */
+
+  /**
+   * Returns the token for a whole word, or -1 if the word is not in the vocabulary. The word is
+   * compared exactly, without converting it to upper case.
+   *
+   * @param s The word
+   * @return The token, or -1
+   * @usage int token = vocabulary.lookup(s);
+   */
+  public int lookup(CharSequence s) {
+    int node = 0;
+    for (int i = 0; i < s.length() && node >= 0; i++) {
+      node = child(node, s.charAt(i));
+    }
+    return (node < 0) ? -1 : nodeToken[node];
+  }
+
+  /* Method: tokenize(input, command) */
+
+  /**
+   * Splits a line of input into words and stores the token of each word in the command, or -1 for
+   * a word that is not in the vocabulary. A word that is not in the vocabulary but is the start of
+   * exactly one token stands for that token. Words are separated by white space and converted to
+   * upper case while they are scanned; nothing is allocated. Words beyond the capacity of the
+   * command are ignored.
+   *
+   * @param input The line typed by the player
+   * @param command The parsed command to fill in
+   * @return The number of words stored in the command
+   * @usage int n = vocabulary.tokenize(input, command);
+   */
+  public int tokenize(CharSequence input, AdvParsedCommand command) {
+    command.clear();
+    int length = input.length();
+    int i = 0;
+    while (i < length && !command.isFull()) {
+      while (i < length && input.charAt(i) <= ' ') {
+        i++;
+      }
+      if (i == length) {
+        break;
+      }
+      int node = 0;
+      while (i < length && input.charAt(i) > ' ') {
+        if (node >= 0) {
+          node = child(node, toUpperCase(input.charAt(i)));
+        }
+        i++;
+      }
+      command.add((node < 0) ? -1 : prefixToken[node]);
+    }
+    return command.getCount();
+  }
+
+  /* Method: getSuggestion(word) */
+
+  /**
+   * Returns the canonical word of the spelling closest to a word that matched nothing, or null if
+   * no spelling is close enough. Words of up to three letters may be one edit away, longer words
+   * two; an edit inserts, deletes or replaces a letter. Of several spellings at the same distance,
+   * the first in alphabetical order wins.
+   *
+   * @param word The word typed by the player
+   * @return The suggested word, or null
+   * @usage String suggestion = vocabulary.getSuggestion(word);
+   */
+  public String getSuggestion(String word) {
+    if (word.isEmpty()) {
+      return null;
+    }
+    char[] query = new char[word.length()];
+    for (int i = 0; i < query.length; i++) {
+      query[i] = toUpperCase(word.charAt(i));
+    }
+    Search search = new Search(query, (query.length <= 3) ? 1 : 2);
+    for (int j = 0; j <= query.length; j++) {
+      search.rows[0][j] = j;
+    }
+    search.visit(0, 0);
+    return (search.token < 0) ? null : words[search.token];
+  }
+
+  /* Private class: Search */
+
+  /**
+   * This class is one search for the spelling closest to a word. It walks the trie depth first,
+   * in alphabetical order, and keeps one row of the edit-distance table per level: the row of a
+   * node holds the distances between its prefix and every prefix of the word, and is computed from
+   * the row of its parent. A subtree is skipped as soon as no entry of its row is below the best
+   * distance found so far, since the distances can only grow further down, so the search stays
+   * near the spellings that resemble the word even in a vocabulary of many thousand words.
+   */
+
+  private class Search {
+
+    private final char[] query;
+    private final int[][] rows;
+    private int best;
+    private int token = -1;
+
+    Search(char[] query, int limit) {
+      this.query = query;
+      this.rows = new int[query.length + limit + 1][query.length + 1];
+      this.best = limit + 1;
+    }
+
+    void visit(int node, int depth) {
+      int[] row = rows[depth];
+      if (nodeToken[node] >= 0 && row[query.length] < best) {
+        best = row[query.length];
+        token = nodeToken[node];
+      }
+      if (depth + 1 == rows.length) {
+        return;
+      }
+      int[] next = rows[depth + 1];
+      for (int c = childStart[node]; c < childStart[node + 1]; c++) {
+        char ch = childChar[c];
+        next[0] = depth + 1;
+        int smallest = next[0];
+        for (int j = 1; j <= query.length; j++) {
+          int cost = (query[j - 1] == ch) ? 0 : 1;
+          next[j] = Math.min(Math.min(next[j - 1], row[j]) + 1, row[j - 1] + cost);
+          smallest = Math.min(smallest, next[j]);
+        }
+        if (smallest < best) {
+          visit(childNode[c], depth + 1);
+        }
+      }
+    }
+  }
+
+  private static char toUpperCase(char c) {
+    if (c < 0x80) {
+      return (c >= 'a' && c <= 'z') ? (char) (c - ('a' - 'A')) : c;
+    }
+    return Character.toUpperCase(c);
+  }
+
+  // the child of a node for a character, or -1
+  private int child(int node, char c) {
+    int lo = childStart[node];
+    int hi = childStart[node + 1] - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      char m = childChar[mid];
+      if (m < c) {
+        lo = mid + 1;
+      } else if (m > c) {
+        hi = mid - 1;
+      } else {
+        return childNode[mid];
+      }
+    }
+    return -1;
+  }
+
+  /* Private class: TrieBuilder */
+
+  /**
+   * This class builds the trie as linked nodes and then numbers them breadth first, which puts the
+   * children of every node next to each other in the flattened arrays.
+   */
+
+  private static class TrieBuilder {
+
+    private final Node root = new Node();
+    private int size = 1;
+
+    void add(String word, int token) {
+      Node node = root;
+      for (int i = 0; i < word.length(); i++) {
+        Node next = node.children.get(word.charAt(i));
+        if (next == null) {
+          next = new Node();
+          node.children.put(word.charAt(i), next);
+          size++;
+        }
+        node = next;
+      }
+      node.token = token;
+    }
+
+    int size() {
+      return size;
+    }
+
+    void flatten(int[] childStart, char[] childChar, int[] childNode, int[] nodeToken) {
+      List<Node> queue = new ArrayList<>();
+      queue.add(root);
+      int next = 1;
+      for (int n = 0; n < queue.size(); n++) {
+        Node node = queue.get(n);
+        nodeToken[n] = node.token;
+        childStart[n] = next - 1;
+        for (Map.Entry<Character, Node> e : node.children.entrySet()) {
+          childChar[next - 1] = e.getKey();
+          childNode[next - 1] = next;
+          queue.add(e.getValue());
+          next++;
+        }
+      }
+      childStart[queue.size()] = next - 1;
+    }
+  }
+
+  /* Private class: Node */
+
+  /**
+   * This class is a node of the trie while it is being built.
+   */
+
+  private static class Node {
+
+    private final TreeMap<Character, Node> children = new TreeMap<>();
+    private int token = -1;
+  }
+}
@@ -0,0 +1,244 @@
+/*
+ * File: AdvWorld.java
+ * -------------------
+ * This file defines the immutable part of an Adventure game: the
+ * rooms, objects and synonyms read from the data files.
+ */
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/* Class: AdvWorld */
+
+/**
+ * This class holds everything that is read from the data files of an adventure: the rooms, the
+ * objects and the synonyms. A world is loaded once and is never changed afterwards, so a single
+ * instance can be shared by any number of games running at the same time. Everything that changes
+ * while a player moves around (the current room, the inventory and where the objects are) is kept
+ * by the Adventure instance that represents that player.
+ *
+ * <p>The objects stored in the rooms of a world describe the initial placement only.
+ */
+
+public class AdvWorld {
+
+  private final String name;
+  private final SortedMap<Integer, AdvRoom> rooms;
+  private final List<AdvObject> objects;
+  private final Map<String, String> synonyms;
+  private final AdvMotionGraph graph;
+  private final AdvVocabulary vocabulary;
+  private final AdvCommandRegistry commands;
+  private final AdvDescriptionCache descriptionCache;
+  private final int[] initialRooms;
+
+  private AdvWorld(String name, SortedMap<Integer, AdvRoom> rooms, List<AdvObject> objects,
+      Map<String, String> synonyms, AdvDescriptionCache descriptionCache) {
+    this.name = name;
+    this.descriptionCache = descriptionCache;
+    this.rooms = Collections.unmodifiableSortedMap(rooms);
+    this.objects = Collections.unmodifiableList(objects);
+    this.synonyms = Collections.unmodifiableMap(synonyms);
+    for (int i = 0; i < objects.size(); i++) {
+      objects.get(i).setId(i);
+      rooms.get(objects.get(i).getInitialLocation()).addObject(objects.get(i));
+    }
+    this.graph = new AdvMotionGraph(rooms, objects);
+    this.vocabulary = new AdvVocabulary(graph, objects, synonyms,
+        AdvCommandRegistry.getProvidedVerbs().keySet());
+    this.commands = new AdvCommandRegistry(vocabulary, graph);
+    this.initialRooms = new int[objects.size()];
+    for (int i = 0; i < initialRooms.length; i++) {
+      initialRooms[i] = graph.getRoomIndex(objects.get(i).getInitialLocation());
+    }
+  }
+
+  // builds a world from parsed data; used by the loaders
+  static AdvWorld create(String name, SortedMap<Integer, AdvRoom> rooms, List<AdvObject> objects,
+      Map<String, String> synonyms) {
+    return new AdvWorld(name, rooms, objects, synonyms, null);
+  }
+
+  // builds a world whose room descriptions are served by the specified cache
+  static AdvWorld create(String name, SortedMap<Integer, AdvRoom> rooms, List<AdvObject> objects,
+      Map<String, String> synonyms, AdvDescriptionCache descriptionCache) {
+    return new AdvWorld(name, rooms, objects, synonyms, descriptionCache);
+  }
+
+  /* Static method: load(name) */
+
+  /**
+   * Loads the world with the specified name. If a compiled image written by AdvWorldImage exists
+   * and is up to date with the text files, the world is read from the image; otherwise it is read
+   * from the text files.
+   *
+   * @param name The name of the adventure, such as "Small" or "Crowther"
+   * @return The loaded world
+   * @usage AdvWorld world = AdvWorld.load(name);
+   */
+  public static AdvWorld load(String name) throws IOException {
+    return load(name, 0);
+  }
+
+  /**
+   * Loads the world with the specified name as load(name) does. If the world comes from an image
+   * and cacheSize is positive, the room descriptions stay in the mapped image and at most
+   * cacheSize of them are kept decoded on the heap; see getDescriptionCache.
+   *
+   * @param name The name of the adventure
+   * @param cacheSize The capacity of the description cache, or 0 to keep every description
+   * @return The loaded world
+   * @usage AdvWorld world = AdvWorld.load(name, cacheSize);
+   */
+  public static AdvWorld load(String name, int cacheSize) throws IOException {
+    if (AdvWorldImage.isUpToDate(name)) {
+      try {
+        return AdvWorldImage.load(name, cacheSize);
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+    return loadText(name);
+  }
+
+  /* Static method: loadText(name) */
+
+  /**
+   * Reads the world with the specified name from the files name + "Rooms.txt", name +
+   * "Objects.txt" and name + "Synonyms.txt", using AdvTextLoader.
+   *
+   * @param name The name of the adventure, such as "Small" or "Crowther"
+   * @return The loaded world
+   * @usage AdvWorld world = AdvWorld.loadText(name);
+   */
+  public static AdvWorld loadText(String name) throws IOException {
+    return AdvTextLoader.load(name);
+  }
+
+  /* Method: getName() */
+
+  /**
+   * Returns the name the world was loaded from.
+   *
+   * @return The name of the adventure
+   * @usage String name = world.getName();
+   */
+  public String getName() {
+    return name;
+  }
+
+  /* Method: getRoom(number) */
+
+  /**
+   * Returns the room with the specified number, or null if there is no such room. Room 0 never
+   * exists; moving there ends the game.
+   *
+   * @param number The room number
+   * @return The room with that number, or null
+   * @usage AdvRoom room = world.getRoom(number);
+   */
+  public AdvRoom getRoom(int number) {
+    return rooms.get(number);
+  }
+
+  /* Method: getFirstRoom() */
+
+  /**
+   * Returns the room in which every game starts, which is the room with the lowest number.
+   *
+   * @return The starting room
+   * @usage AdvRoom room = world.getFirstRoom();
+   */
+  public AdvRoom getFirstRoom() {
+    return rooms.get(rooms.firstKey());
+  }
+
+  /* Method: getGraph() */
+
+  /**
+   * Returns the compiled motion tables of the world.
+   *
+   * @return The motion graph of the world
+   * @usage AdvMotionGraph graph = world.getGraph();
+   */
+  public AdvMotionGraph getGraph() {
+    return graph;
+  }
+
+  /* Method: getVocabulary() */
+
+  /**
+   * Returns the vocabulary of the world, which maps every word a player can type to its token.
+   *
+   * @return The vocabulary of the world
+   * @usage AdvVocabulary vocabulary = world.getVocabulary();
+   */
+  public AdvVocabulary getVocabulary() {
+    return vocabulary;
+  }
+
+  /* Method: getCommands() */
+
+  /**
+   * Returns the registry that maps the tokens of this world to commands.
+   *
+   * @return The command registry of the world
+   * @usage AdvCommandRegistry commands = world.getCommands();
+   */
+  public AdvCommandRegistry getCommands() {
+    return commands;
+  }
+
+  /* Method: getDescriptionCache() */
+
+  /**
+   * Returns the cache that serves the room descriptions of this world, or null if the descriptions
+   * are held in memory.
+   *
+   * @return The description cache, or null
+   * @usage AdvDescriptionCache cache = world.getDescriptionCache();
+   */
+  public AdvDescriptionCache getDescriptionCache() {
+    return descriptionCache;
+  }
+
+  /* Method: getObjects() */
+
+  /**
+   * Returns the objects of the world in the order they appear in the objects file.
+   *
+   * @return A read-only list of the objects
+   * @usage List<AdvObject> objects = world.getObjects();
+   */
+  public List<AdvObject> getObjects() {
+    return objects;
+  }
+
+  /* Method: getInitialRoomIndex(id) */
+
+  /**
+   * Returns the index in the motion graph of the room in which an object starts.
+   *
+   * @param id The id of the object
+   * @return The room index of its initial location
+   * @usage int room = world.getInitialRoomIndex(id);
+   */
+  public int getInitialRoomIndex(int id) {
+    return initialRooms[id];
+  }
+
+  /* Method: getSynonyms() */
+
+  /**
+   * Returns the synonym table, which maps an abbreviation to the word it stands for.
+   *
+   * @return A read-only map of synonyms
+   * @usage Map<String, String> synonyms = world.getSynonyms();
+   */
+  public Map<String, String> getSynonyms() {
+    return synonyms;
+  }
+}
@@ -0,0 +1,707 @@
+/*
+ * File: AdvWorldAnalyzer.java
+ * ---------------------------
+ * This program checks whether an Adventure world can be finished
+ * and reports the parts of it a player can never use.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/* Class: AdvWorldAnalyzer */
+
+/**
+ * This class explores the states a player can reach in a world, straight from the motion graph and
+ * the initial locations of the objects, and reports
+ *
+ * <ul>
+ * <li>the rooms no player can ever reach
+ * <li>the keys, objects named after the slash of an exit, that no player can ever get
+ * <li>the dead ends: reachable rooms that no exit leaves
+ * <li>the forced dead ends: reachable forced rooms in which no FORCED exit can be taken
+ * <li>the shortest sequence of commands that ends the game by reaching room 0
+ * </li>
+ *
+ * The world files do not say how the game ends: room 0 is the end of every game, won or lost, so
+ * unless told otherwise the analyzer counts a death as a way to finish. In Crowther the shortest
+ * such path is NORTH, XYZZY, NORTH, which falls into the pit. setDeathRooms, or -deaths on the
+ * command line, names the rooms whose entry kills the player; the search does not go past them,
+ * so the winning path then avoids them.
+ *
+ *
+ * A state is a room together with the set of keys the player carries. The search is a
+ * breadth-first search, one level at a time, with each level expanded in parallel on a fork-join
+ * pool. A state is packed into a long, the room index in the high half and the key set in the low
+ * half, and the states seen so far are kept in an open-addressing table of two AtomicLongArrays
+ * (state and parent) that threads claim slots in by compare-and-set. Forced rooms are passed
+ * through, as in the game, so the states are the rooms in which a player types.
+ *
+ * <p>The search is exact for worlds with at most 32 distinct keys, under the assumption that a
+ * player never drops a key. Larger worlds, such as generated ones, are searched with the key sets
+ * left out: every key that can be reached is assumed to be carried. The search is repeated with
+ * the keys found by the previous round until no new key turns up, and a forced room whose keyed
+ * FORCED exit depends on a key the player may or may not have is taken both ways. In this mode the
+ * winning path is a lower bound that ignores the detours needed to fetch the keys.
+ *
+ * <p>Usage: java AdvWorldAnalyzer [-threads n] [-limit n] [-deaths n,n,...] name
+ */
+
+public class AdvWorldAnalyzer {
+
+  private static final int MAX_EXACT_KEYS = 32;
+  private static final int SPLIT_THRESHOLD = 1024;
+  private static final long EMPTY = -1;
+  private static final long ROOT = -2;
+
+  private final AdvWorld world;
+  private final AdvMotionGraph graph;
+  private final ForkJoinPool pool;
+  private final int roomCount;
+  private final boolean exact;
+  // object id -> bit of the key set, or -1; bit -> object id
+  private final int[] keyBit;
+  private final int[] keyObjects;
+  // the keys that start in room r are keyList[keyStart[r] .. keyStart[r + 1])
+  private final int[] keyStart;
+  private final int[] keyList;
+  private final int maxDegree;
+  private final BitSet deathRooms = new BitSet();
+
+  private BitSet obtained = new BitSet();
+  private StateTable states;
+  private AtomicLongArray visitedRooms;
+  private AtomicLongArray stuckRooms;
+  private final AtomicLong winner = new AtomicLong(EMPTY);
+  private int rounds;
+
+  /**
+   * Creates an analyzer for a world.
+   *
+   * @param world The world to analyze
+   * @param pool The pool the search runs on
+   * @usage AdvWorldAnalyzer analyzer = new AdvWorldAnalyzer(world, pool);
+   */
+  public AdvWorldAnalyzer(AdvWorld world, ForkJoinPool pool) {
+    this.world = world;
+    this.graph = world.getGraph();
+    this.pool = pool;
+    this.roomCount = graph.getRoomCount();
+    int objectCount = world.getObjects().size();
+    keyBit = new int[objectCount];
+    Arrays.fill(keyBit, -1);
+    List<Integer> keys = new ArrayList<>();
+    for (int exit = 0; exit < graph.getExitStart(roomCount); exit++) {
+      int key = graph.getKey(exit);
+      if (key >= 0 && key < objectCount && keyBit[key] < 0) {
+        keyBit[key] = keys.size();
+        keys.add(key);
+      }
+    }
+    keyObjects = new int[keys.size()];
+    for (int i = 0; i < keyObjects.length; i++) {
+      keyObjects[i] = keys.get(i);
+    }
+    exact = keyObjects.length <= MAX_EXACT_KEYS;
+    keyStart = new int[roomCount + 1];
+    for (int key : keyObjects) {
+      keyStart[world.getInitialRoomIndex(key) + 1]++;
+    }
+    for (int r = 0; r < roomCount; r++) {
+      keyStart[r + 1] += keyStart[r];
+    }
+    keyList = new int[keyObjects.length];
+    int[] fill = Arrays.copyOf(keyStart, roomCount);
+    for (int key : keyObjects) {
+      keyList[fill[world.getInitialRoomIndex(key)]++] = key;
+    }
+    int degree = 1;
+    for (int r = 0; r < roomCount; r++) {
+      degree = Math.max(degree, graph.getExitStart(r + 1) - graph.getExitStart(r)
+          + keyStart[r + 1] - keyStart[r]);
+    }
+    maxDegree = degree;
+  }
+
+  /* Method: setDeathRooms(numbers) */
+
+  /**
+   * Names the rooms whose entry ends the game in a death, such as the forced rooms that describe
+   * the death and lead to room 0. A player who enters one of them neither wins nor goes on, so the
+   * winning path never passes through them. Call it before analyze.
+   *
+   * @param numbers The numbers of the death rooms
+   * @usage analyzer.setDeathRooms(numbers);
+   */
+  public void setDeathRooms(List<Integer> numbers) {
+    deathRooms.clear();
+    for (int number : numbers) {
+      int index = graph.getRoomIndex(number);
+      if (index == AdvMotionGraph.END) {
+        throw new IllegalArgumentException("No room " + number);
+      }
+      deathRooms.set(index);
+    }
+  }
+
+  /* Method: analyze() */
+
+  /**
+   * Runs the search. The results are available from the getters afterwards.
+   *
+   * @usage analyzer.analyze();
+   */
+  public void analyze() {
+    rounds = 0;
+    while (true) {
+      rounds++;
+      search();
+      if (exact) {
+        return;
+      }
+      BitSet found = new BitSet();
+      for (int key : keyObjects) {
+        if (canTake(key)) {
+          found.set(key);
+        }
+      }
+      if (found.equals(obtained)) {
+        return;
+      }
+      obtained = found;
+    }
+  }
+
+  // one breadth-first search from the start of the game
+  private void search() {
+    states = new StateTable(exact ? Math.max(1024, 4L * roomCount) : 2L * roomCount + 1024);
+    visitedRooms = new AtomicLongArray((roomCount + 63) / 64);
+    stuckRooms = new AtomicLongArray((roomCount + 63) / 64);
+    winner.set(EMPTY);
+    LongList first = new LongList();
+    land(0, 0, ROOT, first);
+    long[] frontier = first.toArray();
+    while (frontier.length > 0 && winner.get() == EMPTY) {
+      states = states.ensureCapacity((long) frontier.length * maxDegree);
+      frontier = pool.invoke(new Expand(frontier, 0, frontier.length)).toArray();
+    }
+    // keep going past the winning level so every reachable room is found
+    while (frontier.length > 0) {
+      states = states.ensureCapacity((long) frontier.length * maxDegree);
+      frontier = pool.invoke(new Expand(frontier, 0, frontier.length)).toArray();
+    }
+  }
+
+  /* Private class: Expand */
+
+  /**
+   * This class expands a slice of the frontier, splitting it in halves until it is small.
+   */
+
+  private class Expand extends RecursiveTask<LongList> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long[] frontier;
+    private final int from;
+    private final int to;
+
+    Expand(long[] frontier, int from, int to) {
+      this.frontier = frontier;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected LongList compute() {
+      if (to - from <= SPLIT_THRESHOLD) {
+        LongList next = new LongList();
+        for (int i = from; i < to; i++) {
+          expand(frontier[i], next);
+        }
+        return next;
+      }
+      int mid = (from + to) >>> 1;
+      Expand left = new Expand(frontier, from, mid);
+      left.fork();
+      LongList right = new Expand(frontier, mid, to).compute();
+      return left.join().addAll(right);
+    }
+  }
+
+  // adds the states that follow a state to next
+  private void expand(long state, LongList next) {
+    int room = (int) (state >>> 32);
+    int mask = (int) state;
+    if (exact) {
+      for (int i = keyStart[room]; i < keyStart[room + 1]; i++) {
+        int bit = 1 << keyBit[keyList[i]];
+        if ((mask & bit) == 0) {
+          add(room, mask | bit, state, next);
+        }
+      }
+    }
+    int first = graph.getExitStart(room);
+    int end = graph.getExitStart(room + 1);
+    for (int i = first; i < end; i++) {
+      if (isOpen(i, mask) && isFirstOpen(first, i, mask)) {
+        land(graph.getDestination(i), mask, state, next);
+      }
+    }
+  }
+
+  // true if no earlier exit of the room in the same direction is open, as findExit picks the first
+  private boolean isFirstOpen(int first, int exit, int mask) {
+    for (int i = first; i < exit; i++) {
+      if (graph.getDirection(i) == graph.getDirection(exit) && isOpen(i, mask)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean isOpen(int exit, int mask) {
+    int key = graph.getKey(exit);
+    return key == AdvMotionGraph.NO_KEY || hasKey(key, mask);
+  }
+
+  private boolean hasKey(int key, int mask) {
+    if (key >= keyBit.length) {
+      return false;
+    }
+    return exact ? (mask & (1 << keyBit[key])) != 0 : obtained.get(key);
+  }
+
+  // follows the forced rooms from a room the player moves to and adds the state it ends in
+  private void land(int room, int mask, long parent, LongList next) {
+    int depth = 0;
+    while (room != AdvMotionGraph.END && !deathRooms.get(room) && graph.isForced(room)
+        && depth++ < roomCount) {
+      mark(visitedRooms, room);
+      int target = AdvMotionGraph.NO_EXIT;
+      int first = graph.getExitStart(room);
+      int end = graph.getExitStart(room + 1);
+      for (int i = first; i < end && target == AdvMotionGraph.NO_EXIT; i++) {
+        if (graph.getDirection(i) != graph.getForcedDirection()) {
+          continue;
+        }
+        int key = graph.getKey(i);
+        if (key == AdvMotionGraph.NO_KEY) {
+          target = graph.getDestination(i);
+        } else if (hasKey(key, mask)) {
+          if (exact) {
+            target = graph.getDestination(i);
+          } else {
+            // the player may not have picked this key up yet, so both ways are possible
+            land(graph.getDestination(i), mask, parent, next);
+          }
+        }
+      }
+      if (target == AdvMotionGraph.NO_EXIT) {
+        mark(stuckRooms, room);
+        break;
+      }
+      room = target;
+    }
+    if (room == AdvMotionGraph.END) {
+      winner.compareAndSet(EMPTY, parent);
+    } else if (deathRooms.get(room)) {
+      mark(visitedRooms, room);
+    } else if (depth <= roomCount) {
+      add(room, mask, parent, next);
+    }
+  }
+
+  private void add(int room, int mask, long parent, LongList next) {
+    long state = ((long) room << 32) | (mask & 0xFFFFFFFFL);
+    if (states.add(state, parent)) {
+      mark(visitedRooms, room);
+      next.add(state);
+    }
+  }
+
+  private static void mark(AtomicLongArray bits, int index) {
+    long bit = 1L << (index & 63);
+    long word = bits.get(index >>> 6);
+    while ((word & bit) == 0 && !bits.compareAndSet(index >>> 6, word, word | bit)) {
+      word = bits.get(index >>> 6);
+    }
+  }
+
+  private static boolean isMarked(AtomicLongArray bits, int index) {
+    return (bits.get(index >>> 6) & (1L << (index & 63))) != 0;
+  }
+
+  private boolean canTake(int key) {
+    int room = world.getInitialRoomIndex(key);
+    return isMarked(visitedRooms, room) && !graph.isForced(room);
+  }
+
+  /* Results */
+
+  /**
+   * Returns true if the search kept track of the keys carried, which it does for worlds with at
+   * most 32 keys.
+   *
+   * @return true if the search was exact
+   * @usage if (analyzer.isExact()) . . .
+   */
+  public boolean isExact() {
+    return exact;
+  }
+
+  /**
+   * Returns the number of states reached by the last round of the search.
+   *
+   * @return The number of states
+   * @usage long n = analyzer.getStateCount();
+   */
+  public long getStateCount() {
+    return states.size();
+  }
+
+  /**
+   * Returns the number of rounds the search needed to find every reachable key.
+   *
+   * @return The number of rounds
+   * @usage int n = analyzer.getRounds();
+   */
+  public int getRounds() {
+    return rounds;
+  }
+
+  /**
+   * Returns the numbers of the rooms no player can reach.
+   *
+   * @return The unreachable room numbers, in increasing order
+   * @usage List<Integer> rooms = analyzer.getUnreachableRooms();
+   */
+  public List<Integer> getUnreachableRooms() {
+    List<Integer> result = new ArrayList<>();
+    for (int r = 0; r < roomCount; r++) {
+      if (!isMarked(visitedRooms, r)) {
+        result.add(graph.getRoom(r).getRoomNumber());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the names of the keys no player can get, including key names that match no object.
+   *
+   * @return The names of the unobtainable keys, sorted
+   * @usage List<String> keys = analyzer.getUnobtainableKeys();
+   */
+  public List<String> getUnobtainableKeys() {
+    TreeSet<String> result = new TreeSet<>();
+    for (int key : keyObjects) {
+      if (!canTake(key)) {
+        result.add(world.getObjects().get(key).getName());
+      }
+    }
+    // exits whose key names no object have a key id past the last object
+    for (int r = 0; r < roomCount; r++) {
+      int first = graph.getExitStart(r);
+      for (int i = first; i < graph.getExitStart(r + 1); i++) {
+        if (graph.getKey(i) >= keyBit.length) {
+          result.add(graph.getRoom(r).getMotionTable()[i - first].getKeyName());
+        }
+      }
+    }
+    return new ArrayList<>(result);
+  }
+
+  /**
+   * Returns the numbers of the reachable rooms that are not forced and have no exit to another room
+   * that a player could open.
+   *
+   * @return The dead-end room numbers, in increasing order
+   * @usage List<Integer> rooms = analyzer.getDeadEnds();
+   */
+  public List<Integer> getDeadEnds() {
+    List<Integer> result = new ArrayList<>();
+    for (int r = 0; r < roomCount; r++) {
+      if (!isMarked(visitedRooms, r) || graph.isForced(r)) {
+        continue;
+      }
+      boolean way = false;
+      for (int i = graph.getExitStart(r); i < graph.getExitStart(r + 1) && !way; i++) {
+        int key = graph.getKey(i);
+        boolean openable = key == AdvMotionGraph.NO_KEY
+            || (key < keyBit.length && keyBit[key] >= 0 && canTake(key));
+        way = openable && graph.getDestination(i) != r;
+      }
+      if (!way) {
+        result.add(graph.getRoom(r).getRoomNumber());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the numbers of the forced rooms a player can reach in a state in which none of their
+   * FORCED exits can be taken.
+   *
+   * @return The forced dead-end room numbers, in increasing order
+   * @usage List<Integer> rooms = analyzer.getForcedDeadEnds();
+   */
+  public List<Integer> getForcedDeadEnds() {
+    List<Integer> result = new ArrayList<>();
+    for (int r = 0; r < roomCount; r++) {
+      if (isMarked(stuckRooms, r)) {
+        result.add(graph.getRoom(r).getRoomNumber());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the shortest sequence of commands that ends the game, or null if the game cannot be
+   * finished. Reaching room 0 through a room not named by setDeathRooms counts, even if the game
+   * ends there in a death.
+   *
+   * @return The commands of the winning path, or null
+   * @usage List<String> path = analyzer.getWinningPath();
+   */
+  public List<String> getWinningPath() {
+    long last = winner.get();
+    if (last == EMPTY) {
+      return null;
+    }
+    List<String> path = new ArrayList<>();
+    path.add(commandBetween(last, EMPTY));
+    for (long state = last; states.getParent(state) != ROOT; state = states.getParent(state)) {
+      path.add(commandBetween(states.getParent(state), state));
+    }
+    Collections.reverse(path);
+    return path;
+  }
+
+  // the command that leads from one state to the next, or to the end of the game if to is EMPTY
+  private String commandBetween(long from, long to) {
+    int room = (int) (from >>> 32);
+    int mask = (int) from;
+    if (to != EMPTY && (int) (to >>> 32) == room && (int) to != mask) {
+      int bit = Integer.numberOfTrailingZeros((int) to & ~mask);
+      return "TAKE " + world.getObjects().get(keyObjects[bit]).getName();
+    }
+    int first = graph.getExitStart(room);
+    for (int i = first; i < graph.getExitStart(room + 1); i++) {
+      if (isOpen(i, mask) && isFirstOpen(first, i, mask)) {
+        LongList reached = new LongList();
+        StateTable saved = states;
+        long savedWinner = winner.get();
+        states = new StateTable(64);
+        winner.set(EMPTY);
+        land(graph.getDestination(i), mask, from, reached);
+        boolean hit = (to == EMPTY) ? winner.get() != EMPTY : reached.contains(to);
+        states = saved;
+        winner.set(savedWinner);
+        if (hit) {
+          return graph.getDirectionName(graph.getDirection(i));
+        }
+      }
+    }
+    return "?";
+  }
+
+  /* Private class: StateTable */
+
+  /**
+   * This class is the set of states seen by the search, mapping each state to the state it was
+   * first reached from. It is an open-addressing hash table with linear probing over two
+   * AtomicLongArrays; a thread claims an empty slot by compare-and-set, so states are added
+   * concurrently without locks. The table only grows between levels of the search.
+   */
+
+  private static class StateTable {
+
+    private final AtomicLongArray keys;
+    private final AtomicLongArray parents;
+    private final int mask;
+    private final AtomicInteger size = new AtomicInteger();
+
+    StateTable(long expected) {
+      int capacity = Integer.highestOneBit((int) Math.min(1 << 30, Math.max(16, 2 * expected)));
+      if (capacity < 2 * expected && capacity < (1 << 30)) {
+        capacity <<= 1;
+      }
+      keys = new AtomicLongArray(capacity);
+      parents = new AtomicLongArray(capacity);
+      mask = capacity - 1;
+      for (int i = 0; i < capacity; i++) {
+        keys.set(i, EMPTY);
+      }
+    }
+
+    boolean add(long state, long parent) {
+      int i = hash(state) & mask;
+      while (true) {
+        long k = keys.get(i);
+        if (k == state) {
+          return false;
+        }
+        if (k == EMPTY) {
+          if (keys.compareAndSet(i, EMPTY, state)) {
+            parents.set(i, parent);
+            size.incrementAndGet();
+            return true;
+          }
+          continue;
+        }
+        i = (i + 1) & mask;
+      }
+    }
+
+    long getParent(long state) {
+      for (int i = hash(state) & mask; keys.get(i) != EMPTY; i = (i + 1) & mask) {
+        if (keys.get(i) == state) {
+          return parents.get(i);
+        }
+      }
+      return EMPTY;
+    }
+
+    int size() {
+      return size.get();
+    }
+
+    // returns a table with room for the specified number of further states, copying if needed
+    StateTable ensureCapacity(long more) {
+      if (2 * (size.get() + more) <= keys.length()) {
+        return this;
+      }
+      StateTable bigger = new StateTable(size.get() + more);
+      for (int i = 0; i < keys.length(); i++) {
+        if (keys.get(i) != EMPTY) {
+          bigger.add(keys.get(i), parents.get(i));
+        }
+      }
+      return bigger;
+    }
+
+    private static int hash(long state) {
+      long h = state * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ (h >>> 32));
+    }
+  }
+
+  /* Private class: LongList */
+
+  /**
+   * This class is a growable array of longs, used for the frontiers of the search.
+   */
+
+  private static class LongList {
+
+    private long[] values = new long[16];
+    private int size;
+
+    void add(long value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, 2 * size);
+      }
+      values[size++] = value;
+    }
+
+    LongList addAll(LongList other) {
+      if (size + other.size > values.length) {
+        values = Arrays.copyOf(values, Math.max(2 * values.length, size + other.size));
+      }
+      System.arraycopy(other.values, 0, values, size, other.size);
+      size += other.size;
+      return this;
+    }
+
+    boolean contains(long value) {
+      for (int i = 0; i < size; i++) {
+        if (values[i] == value) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    long[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+  }
+
+  /**
+   * Analyzes the world named on the command line and prints the report.
+   */
+  public static void main(String[] args) throws IOException {
+    int threads = Runtime.getRuntime().availableProcessors();
+    int limit = 20;
+    List<Integer> deaths = new ArrayList<>();
+    String name = null;
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-threads")) {
+        threads = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-limit")) {
+        limit = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-deaths")) {
+        for (String number : args[++i].split(",")) {
+          deaths.add(Integer.parseInt(number.trim()));
+        }
+      } else {
+        name = args[i];
+      }
+    }
+    if (name == null) {
+      System.out.println(
+          "Usage: java AdvWorldAnalyzer [-threads n] [-limit n] [-deaths n,n,...] name");
+      return;
+    }
+    AdvWorld world = AdvWorld.load(name);
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    AdvWorldAnalyzer analyzer = new AdvWorldAnalyzer(world, pool);
+    analyzer.setDeathRooms(deaths);
+    long start = System.nanoTime();
+    analyzer.analyze();
+    long elapsed = System.nanoTime() - start;
+    pool.shutdown();
+
+    System.out.printf("%s: %d rooms, %d keys, %s search, %d states, %d rounds, %.2f s%n", name,
+        world.getGraph().getRoomCount(), analyzer.keyObjects.length,
+        analyzer.isExact() ? "exact" : "key-set free", analyzer.getStateCount(),
+        analyzer.getRounds(), elapsed / 1e9);
+    print("Unreachable rooms", analyzer.getUnreachableRooms(), limit);
+    print("Unobtainable keys", analyzer.getUnobtainableKeys(), limit);
+    print("Dead ends", analyzer.getDeadEnds(), limit);
+    print("Forced dead ends", analyzer.getForcedDeadEnds(), limit);
+    if (deaths.isEmpty()) {
+      System.out.println("Any way into room 0 counts as a win, deaths included; "
+          + "name the death rooms with -deaths");
+    } else {
+      System.out.println("Death rooms, not passed through: " + deaths);
+    }
+    List<String> path = analyzer.getWinningPath();
+    if (path == null) {
+      System.out.println("The game cannot be finished");
+    } else {
+      System.out.println((analyzer.isExact() ? "Shortest winning path: "
+          : "Winning path, not counting fetching keys: ") + path.size() + " commands");
+      print("  ", path, limit);
+    }
+  }
+
+  private static void print(String title, List<?> items, int limit) {
+    if (!title.trim().isEmpty()) {
+      System.out.println(title + ": " + items.size());
+    }
+    if (!items.isEmpty()) {
+      List<?> shown = items.subList(0, Math.min(limit, items.size()));
+      System.out.println("  " + shown + ((items.size() > limit) ? " ..." : ""));
+    }
+  }
+}
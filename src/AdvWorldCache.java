@@ -0,0 +1,212 @@
+/*
+ * File: AdvWorldCache.java
+ * ------------------------
+ * This file defines the process-wide cache of loaded worlds, which
+ * reloads a world when its data files change.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/* Class: AdvWorldCache */
+
+/**
+ * This class keeps every world that has been loaded, keyed by name, so a world is read once and
+ * shared by all the games played on it. The world of a name is held in an AtomicReference. When
+ * the cache is watching for changes, a background thread notices that one of the Rooms, Objects or
+ * Synonyms files of a cached world has been written, loads the world again and swaps the new
+ * instance in. Games that start afterwards get the new world; games that are already running keep
+ * the world they started with, since an AdvWorld never changes. If the new files cannot be read,
+ * the error is printed and the old world stays in place.
+ *
+ * <p>Writes to the data files usually arrive as several events, so a reload waits until the files
+ * have been quiet for a short delay.
+ */
+
+public class AdvWorldCache implements Closeable {
+
+  private static final String[] SUFFIXES = {"Rooms.txt", "Objects.txt", "Synonyms.txt"};
+  private static final long RELOAD_DELAY_MILLIS = 200;
+  private static AdvWorldCache shared;
+
+  private final Map<String, AtomicReference<AdvWorld>> worlds = new ConcurrentHashMap<>();
+  private final Map<String, ScheduledFuture<?>> pending = new ConcurrentHashMap<>();
+  private final Set<Path> watchedDirs = new HashSet<>();
+  private WatchService watcher;
+  private ScheduledExecutorService reloader;
+
+  /* Static method: getShared() */
+
+  /**
+   * Returns the cache shared by the whole process. It does not watch for changes until
+   * startWatching is called.
+   *
+   * @return The shared cache
+   * @usage AdvWorldCache cache = AdvWorldCache.getShared();
+   */
+  public static synchronized AdvWorldCache getShared() {
+    if (shared == null) {
+      shared = new AdvWorldCache();
+    }
+    return shared;
+  }
+
+  /* Method: get(name) */
+
+  /**
+   * Returns the current version of the world with the specified name, loading it with
+   * AdvWorld.load the first time it is asked for.
+   *
+   * @param name The name of the adventure
+   * @return The world
+   * @usage AdvWorld world = cache.get(name);
+   */
+  public AdvWorld get(String name) throws IOException {
+    AtomicReference<AdvWorld> ref = worlds.get(name);
+    if (ref == null) {
+      synchronized (this) {
+        ref = worlds.get(name);
+        if (ref == null) {
+          ref = new AtomicReference<>(AdvWorld.load(name));
+          worlds.put(name, ref);
+          if (watcher != null) {
+            watch(name);
+          }
+        }
+      }
+    }
+    return ref.get();
+  }
+
+  /* Method: reload(name) */
+
+  /**
+   * Loads the world with the specified name again and makes it the current version. If loading
+   * fails, the current version is kept and the exception is thrown.
+   *
+   * @param name The name of the adventure
+   * @return The new world
+   * @usage AdvWorld world = cache.reload(name);
+   */
+  public AdvWorld reload(String name) throws IOException {
+    AdvWorld world = AdvWorld.load(name);
+    AtomicReference<AdvWorld> ref = worlds.computeIfAbsent(name, n -> new AtomicReference<>());
+    ref.set(world);
+    return world;
+  }
+
+  /* Method: startWatching() */
+
+  /**
+   * Starts watching the data files of the cached worlds, and of the worlds cached later, for
+   * changes.
+   *
+   * @usage cache.startWatching();
+   */
+  public synchronized void startWatching() throws IOException {
+    if (watcher != null) {
+      return;
+    }
+    watcher = FileSystems.getDefault().newWatchService();
+    reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "AdvWorldCache-reload");
+      t.setDaemon(true);
+      return t;
+    });
+    for (String name : worlds.keySet()) {
+      watch(name);
+    }
+    Thread thread = new Thread(this::watchLoop, "AdvWorldCache-watch");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /* Method: close() */
+
+  /**
+   * Stops watching for changes. The cached worlds remain available.
+   *
+   * @usage cache.close();
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (watcher != null) {
+      watcher.close();
+      reloader.shutdownNow();
+      watcher = null;
+      watchedDirs.clear();
+    }
+  }
+
+  private void watch(String name) throws IOException {
+    Path dir = Paths.get(name + SUFFIXES[0]).toAbsolutePath().getParent();
+    if (watchedDirs.add(dir)) {
+      dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+  }
+
+  private void watchLoop() {
+    WatchService service = watcher;
+    try {
+      while (true) {
+        WatchKey key = service.take();
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.context() instanceof Path) {
+            changed(dir.resolve((Path) event.context()).normalize());
+          }
+        }
+        key.reset();
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // the cache was closed
+    }
+  }
+
+  // schedules a reload of the cached world a data file belongs to; names may include directories,
+  // so the file is compared with the resolved paths of the files of each world
+  private void changed(Path file) {
+    for (String name : worlds.keySet()) {
+      for (String suffix : SUFFIXES) {
+        if (file.equals(Paths.get(name + suffix).toAbsolutePath().normalize())) {
+          scheduleReload(name);
+        }
+      }
+    }
+  }
+
+  private synchronized void scheduleReload(String name) {
+    if (reloader == null) {
+      return;
+    }
+    ScheduledFuture<?> previous = pending.get(name);
+    if (previous != null) {
+      previous.cancel(false);
+    }
+    pending.put(name, reloader.schedule(() -> {
+      try {
+        reload(name);
+      } catch (IOException | RuntimeException e) {
+        e.printStackTrace();
+      }
+    }, RELOAD_DELAY_MILLIS, TimeUnit.MILLISECONDS));
+  }
+}
@@ -0,0 +1,289 @@
+/*
+ * File: AdvWorldGenerator.java
+ * ----------------------------
+ * This program writes synthetic Adventure worlds, and random-walk
+ * scripts that play them, for testing at scale.
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/* Class: AdvWorldGenerator */
+
+/**
+ * This class generates a world in the format of the Rooms, Objects and Synonyms files read by
+ * AdvRoom.readFromFile, AdvObject.readFromFile and AdvTextLoader. The same seed and options always
+ * produce the same files. The rooms are written one at a time, so worlds of ten million rooms need
+ * little memory to generate.
+ *
+ * <p>Every room i has an exit to room i + 1 and one back to room i - 1, so the whole world is
+ * reachable, plus further exits to random rooms up to the branching factor; a fraction of those
+ * need a key, which is a random object. The last room has an exit to room 0, which ends the game.
+ * A fraction of the rooms are forced: they move the player on to room i + 1, and some of them
+ * first try a FORCED exit to a random room that needs a key. Forced chains always lead forward to
+ * a room that is not forced, so they never loop. The objects are spread over the rooms that are
+ * not forced.
+ *
+ * <p>The companion scripts are random walks in the format of SmallTest.txt. Each is made by
+ * playing the generated world: at every step the walker picks one of the exits of the room it is
+ * in, or takes, drops, looks or lists the inventory now and then, so the scripts exercise the
+ * motion path, keys and forced rooms rather than typing into the void. The scripts are named
+ * nameWalkN.txt and can be replayed, and recorded, with AdvReplayRunner.
+ *
+ * <p>Usage: java AdvWorldGenerator [options] name, with the options
+ *
+ * <ul>
+ * <li>-rooms n, the number of rooms (default 1000)
+ * <li>-branching n, the number of exits of a room that is not forced, 2 to 12 (default 4)
+ * <li>-locked f, the fraction of random exits that need a key (default 0.1)
+ * <li>-forced f, the fraction of forced rooms (default 0.05)
+ * <li>-objects f, the number of objects per room (default 0.1)
+ * <li>-seed n, the seed of the generator (default 1)
+ * <li>-scripts n, the number of random-walk scripts to write (default 0)
+ * <li>-steps n, the number of commands in each script (default 1000)
+ * </li>
+ */
+
+public class AdvWorldGenerator {
+
+  private static final String[] DIRECTIONS = {"NORTH", "SOUTH", "EAST", "WEST", "UP", "DOWN",
+      "IN", "OUT", "NE", "NW", "SE", "SW"};
+  private static final String[] SCENERY = {"Passages lead off in several directions.",
+      "The air is cold and damp.", "Water drips somewhere in the dark.",
+      "The walls are covered with strange markings.", "A faint breeze blows through here."};
+
+  private int rooms = 1000;
+  private int branching = 4;
+  private double locked = 0.1;
+  private double forced = 0.05;
+  private double objectDensity = 0.1;
+  private long seed = 1;
+
+  /* Method: generate(name) */
+
+  /**
+   * Writes the files name + "Rooms.txt", name + "Objects.txt" and name + "Synonyms.txt".
+   *
+   * @param name The name of the world
+   * @usage generator.generate(name);
+   */
+  public void generate(String name) throws IOException {
+    SplittableRandom random = new SplittableRandom(seed);
+    int objects = (int) Math.min(Integer.MAX_VALUE - 8, Math.round(rooms * objectDensity));
+    BitSet forcedRooms = new BitSet(rooms + 1);
+    for (int i = 2; i < rooms; i++) {
+      if (random.nextDouble() < forced) {
+        forcedRooms.set(i);
+      }
+    }
+    try (Writer out = open(name + "Rooms.txt")) {
+      for (int i = 1; i <= rooms; i++) {
+        writeRoom(out, i, forcedRooms, objects, random);
+      }
+    }
+    try (Writer out = open(name + "Objects.txt")) {
+      for (int id = 0; id < objects; id++) {
+        int room;
+        do {
+          room = 1 + random.nextInt(rooms);
+        } while (forcedRooms.get(room));
+        out.write(objectName(id) + "\n");
+        out.write("a generated object numbered " + id + "\n");
+        out.write(room + "\n\n");
+      }
+    }
+    try (Writer out = open(name + "Synonyms.txt")) {
+      String[] synonyms = {"N=NORTH", "S=SOUTH", "E=EAST", "W=WEST", "U=UP", "D=DOWN",
+          "L=LOOK", "I=INVENTORY", "Q=QUIT", "GET=TAKE"};
+      for (String synonym : synonyms) {
+        out.write(synonym + "\n");
+      }
+    }
+  }
+
+  private void writeRoom(Writer out, int i, BitSet forcedRooms, int objects,
+      SplittableRandom random) throws IOException {
+    out.write(i + "\n");
+    out.write("Room " + i + "\n");
+    out.write("You are in room " + i + " of a generated world.\n");
+    out.write(SCENERY[random.nextInt(SCENERY.length)] + "\n");
+    out.write("-----\n");
+    if (forcedRooms.get(i)) {
+      if (objects > 0 && random.nextDouble() < locked) {
+        int target;
+        do {
+          target = 1 + random.nextInt(rooms);
+        } while (forcedRooms.get(target));
+        writeExit(out, "FORCED", target, objectName(random.nextInt(objects)));
+      }
+      writeExit(out, "FORCED", i + 1, null);
+    } else {
+      String[] dirs = DIRECTIONS.clone();
+      int exits = Math.max(2, Math.min(DIRECTIONS.length, branching));
+      for (int k = 0; k < exits; k++) {
+        int j = k + random.nextInt(dirs.length - k);
+        String dir = dirs[j];
+        dirs[j] = dirs[k];
+        dirs[k] = dir;
+        if (k == 0) {
+          writeExit(out, dir, (i == rooms) ? 0 : i + 1, null);
+        } else if (k == 1) {
+          writeExit(out, dir, (i == 1) ? rooms : i - 1, null);
+        } else {
+          String key = (objects > 0 && random.nextDouble() < locked)
+              ? objectName(random.nextInt(objects)) : null;
+          writeExit(out, dir, 1 + random.nextInt(rooms), key);
+        }
+      }
+    }
+    out.write("\n");
+  }
+
+  private static void writeExit(Writer out, String dir, int room, String key)
+      throws IOException {
+    StringBuilder sb = new StringBuilder(dir);
+    while (sb.length() < 11) {
+      sb.append(' ');
+    }
+    sb.append(room);
+    if (key != null) {
+      sb.append('/').append(key);
+    }
+    out.write(sb.append('\n').toString());
+  }
+
+  private static String objectName(int id) {
+    return "ITEM" + id;
+  }
+
+  private static Writer open(String fileName) throws IOException {
+    return new BufferedWriter(Files.newBufferedWriter(Paths.get(fileName),
+        StandardCharsets.UTF_8), 1 << 16);
+  }
+
+  /* Static method: generateWalk(world, seed, steps) */
+
+  /**
+   * Plays a world with random commands and returns them as a script: the name of the world
+   * followed by one command per line. The script ends with QUIT unless the game ends first.
+   *
+   * @param world The world to play
+   * @param seed The seed of the walk
+   * @param steps The largest number of commands
+   * @return The lines of the script
+   * @usage List<String> script = AdvWorldGenerator.generateWalk(world, seed, steps);
+   */
+  public static List<String> generateWalk(AdvWorld world, long seed, int steps) {
+    SplittableRandom random = new SplittableRandom(seed);
+    AdvMotionGraph graph = world.getGraph();
+    Adventure game = new Adventure(world, new AdvOutput() {
+      @Override
+      protected void emit(byte[] bytes, int offset, int count) {
+        // the output of the walk is not needed
+      }
+    });
+    game.start();
+    List<String> script = new ArrayList<>();
+    script.add(world.getName());
+    for (int step = 0; step < steps && game.isGameOn(); step++) {
+      int room = graph.getRoomIndex(game.getCurrentRoom().getRoomNumber());
+      String command = pickCommand(game, graph, room, random);
+      script.add(command);
+      game.step(command);
+    }
+    if (game.isGameOn()) {
+      script.add("QUIT");
+      script.add("Y");
+    }
+    return script;
+  }
+
+  private static String pickCommand(Adventure game, AdvMotionGraph graph, int room,
+      SplittableRandom random) {
+    AdvObjectLocations locations = game.getLocations();
+    double roll = random.nextDouble();
+    if (roll < 0.1) {
+      List<AdvObject> here = locations.getObjectsIn(room);
+      if (!here.isEmpty()) {
+        return "TAKE " + here.get(random.nextInt(here.size())).getName();
+      }
+    } else if (roll < 0.15) {
+      List<AdvObject> carried = locations.getObjectsIn(AdvObjectLocations.CARRIED);
+      if (!carried.isEmpty()) {
+        return "DROP " + carried.get(random.nextInt(carried.size())).getName();
+      }
+    } else if (roll < 0.18) {
+      return random.nextBoolean() ? "LOOK" : "INVENTORY";
+    }
+    int first = graph.getExitStart(room);
+    int count = graph.getExitStart(room + 1) - first;
+    String dir = graph.getDirectionName(graph.getDirection(first + random.nextInt(count)));
+    return (random.nextInt(4) == 0) ? dir.toLowerCase() : dir;
+  }
+
+  /**
+   * Generates the world, and the scripts, described by the command line.
+   */
+  public static void main(String[] args) throws IOException {
+    AdvWorldGenerator generator = new AdvWorldGenerator();
+    int scripts = 0;
+    int steps = 1000;
+    String name = null;
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "-rooms":
+          generator.rooms = Integer.parseInt(args[++i]);
+          break;
+        case "-branching":
+          generator.branching = Integer.parseInt(args[++i]);
+          break;
+        case "-locked":
+          generator.locked = Double.parseDouble(args[++i]);
+          break;
+        case "-forced":
+          generator.forced = Double.parseDouble(args[++i]);
+          break;
+        case "-objects":
+          generator.objectDensity = Double.parseDouble(args[++i]);
+          break;
+        case "-seed":
+          generator.seed = Long.parseLong(args[++i]);
+          break;
+        case "-scripts":
+          scripts = Integer.parseInt(args[++i]);
+          break;
+        case "-steps":
+          steps = Integer.parseInt(args[++i]);
+          break;
+        default:
+          name = args[i];
+          break;
+      }
+    }
+    if (name == null) {
+      System.out.println("Usage: java AdvWorldGenerator [-rooms n] [-branching n] [-locked f]"
+          + " [-forced f] [-objects f] [-seed n] [-scripts n] [-steps n] name");
+      return;
+    }
+    long start = System.nanoTime();
+    generator.generate(name);
+    System.out.printf("Wrote %s with %d rooms in %.1f s%n", name, generator.rooms,
+        (System.nanoTime() - start) / 1e9);
+    if (scripts > 0) {
+      AdvWorld world = AdvWorld.loadText(name);
+      for (int s = 1; s <= scripts; s++) {
+        Files.write(Paths.get(name + "Walk" + s + ".txt"),
+            generateWalk(world, generator.seed * 31 + s, steps), StandardCharsets.UTF_8);
+      }
+      System.out.printf("Wrote %d scripts of up to %d commands%n", scripts, steps);
+    }
+  }
+}
@@ -0,0 +1,430 @@
+/*
+ * File: AdvWorldImage.java
+ * ------------------------
+ * This file defines the compiled binary form of an Adventure world
+ * and the code that writes and memory-maps it.
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/* Class: AdvWorldImage */
+
+/**
+ * This class compiles the Rooms, Objects and Synonyms text files of a world into a single binary
+ * image, name + "World.dat", and loads a world back from that image by mapping it into memory.
+ * Loading an image involves no scanning or splitting of text, which makes it much faster than
+ * AdvWorld.loadText for large worlds.
+ *
+ * <p>The image is a sequence of big-endian values:
+ *
+ * <ul>
+ * <li>The magic number "ADVW" and the format version
+ * <li>The last-modified time and length of each of the three text files
+ * <li>The rooms: number, name, the position of the description in the text region, and the
+ * motion table
+ * <li>The objects: name, description and initial room
+ * <li>The synonyms
+ * <li>The text region holding every room description, lines separated by newlines
+ * </li>
+ *
+ * Strings are stored as a length followed by UTF-8 bytes; a length of -1 stands for null. An
+ * image is up to date when the recorded times and lengths match the text files on disk.
+ *
+ * <p>Run this class with world names as arguments to compile those worlds and compare the time
+ * needed to load them from text and from the image.
+ */
+
+public class AdvWorldImage {
+
+  /**
+   * The first four bytes of every image
+   */
+  public static final int MAGIC = 0x41445657;
+
+  /**
+   * The version of the format written by this class
+   */
+  public static final int VERSION = 1;
+
+  private static final String[] SOURCES = {"Rooms.txt", "Objects.txt", "Synonyms.txt"};
+
+  private AdvWorldImage() {
+  }
+
+  /* Static method: getPath(name) */
+
+  /**
+   * Returns the path of the image for the world with the specified name.
+   *
+   * @param name The name of the adventure
+   * @return The path of the compiled image
+   * @usage Path path = AdvWorldImage.getPath(name);
+   */
+  public static Path getPath(String name) {
+    return Paths.get(name + "World.dat");
+  }
+
+  /* Static method: compile(name) */
+
+  /**
+   * Reads the world with the specified name from its text files and writes its image. The image is
+   * written to a temporary file first and then moved into place, so a reader never sees a partial
+   * image.
+   *
+   * @param name The name of the adventure
+   * @return The world that was compiled
+   * @usage AdvWorld world = AdvWorldImage.compile(name);
+   */
+  public static AdvWorld compile(String name) throws IOException {
+    long[] stamps = readStamps(name);
+    AdvWorld world = AdvWorld.loadText(name);
+    Path path = getPath(name);
+    Path tmp = Paths.get(path + ".tmp");
+    try (OutputStream os = Files.newOutputStream(tmp)) {
+      write(world, stamps, os);
+    }
+    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return world;
+  }
+
+  /* Static method: write(world, stamps, os) */
+
+  /**
+   * Writes the image of a world to an output stream.
+   *
+   * @param world The world to write
+   * @param stamps The last-modified time and length of each text file, as returned by readStamps
+   * @param os The stream the image is written to
+   * @usage AdvWorldImage.write(world, stamps, os);
+   */
+  public static void write(AdvWorld world, long[] stamps, OutputStream os) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16));
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    for (long stamp : stamps) {
+      out.writeLong(stamp);
+    }
+
+    AdvMotionGraph graph = world.getGraph();
+    StringBuilder text = new StringBuilder();
+    int textBytes = 0;
+    out.writeInt(graph.getRoomCount());
+    for (int i = 0; i < graph.getRoomCount(); i++) {
+      AdvRoom room = graph.getRoom(i);
+      String[] description = room.getDescription();
+      String joined = String.join("\n", description);
+      int length = joined.getBytes(StandardCharsets.UTF_8).length;
+      out.writeInt(room.getRoomNumber());
+      writeString(out, room.getName());
+      out.writeInt(textBytes);
+      out.writeInt(length);
+      out.writeInt(description.length);
+      text.append(joined);
+      textBytes += length;
+      AdvMotionTableEntry[] table = room.getMotionTable();
+      out.writeInt(table.length);
+      for (AdvMotionTableEntry entry : table) {
+        writeString(out, entry.getDirection());
+        out.writeInt(entry.getDestinationRoom());
+        writeString(out, entry.getKeyName());
+      }
+    }
+
+    out.writeInt(world.getObjects().size());
+    for (AdvObject object : world.getObjects()) {
+      writeString(out, object.getName());
+      writeString(out, object.getDescription());
+      out.writeInt(object.getInitialLocation());
+    }
+
+    out.writeInt(world.getSynonyms().size());
+    for (Map.Entry<String, String> e : world.getSynonyms().entrySet()) {
+      writeString(out, e.getKey());
+      writeString(out, e.getValue());
+    }
+
+    byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+    out.flush();
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    if (s == null) {
+      out.writeInt(-1);
+    } else {
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  /* Static method: readStamps(name) */
+
+  /**
+   * Returns the last-modified time and length of each text file of a world, in the order Rooms,
+   * Objects, Synonyms. A missing file has the time and length -1.
+   *
+   * @param name The name of the adventure
+   * @return An array of six values
+   * @usage long[] stamps = AdvWorldImage.readStamps(name);
+   */
+  public static long[] readStamps(String name) throws IOException {
+    long[] stamps = new long[2 * SOURCES.length];
+    for (int i = 0; i < SOURCES.length; i++) {
+      Path source = Paths.get(name + SOURCES[i]);
+      if (Files.exists(source)) {
+        stamps[2 * i] = Files.getLastModifiedTime(source).toMillis();
+        stamps[2 * i + 1] = Files.size(source);
+      } else {
+        stamps[2 * i] = -1;
+        stamps[2 * i + 1] = -1;
+      }
+    }
+    return stamps;
+  }
+
+  /* Static method: isUpToDate(name) */
+
+  /**
+   * Returns true if the image of the world exists, has the current format version and was compiled
+   * from the text files that are on disk now.
+   *
+   * @param name The name of the adventure
+   * @return true if the image can be used instead of the text files
+   * @usage if (AdvWorldImage.isUpToDate(name)) . . .
+   */
+  public static boolean isUpToDate(String name) {
+    Path path = getPath(name);
+    if (!Files.isRegularFile(path)) {
+      return false;
+    }
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long[] stamps = readStamps(name);
+      ByteBuffer header = ByteBuffer.allocate(8 + 8 * stamps.length);
+      while (header.hasRemaining() && channel.read(header) >= 0) {
+      }
+      header.flip();
+      if (header.remaining() < header.capacity() || header.getInt() != MAGIC
+          || header.getInt() != VERSION) {
+        return false;
+      }
+      for (long stamp : stamps) {
+        if (header.getLong() != stamp) {
+          return false;
+        }
+      }
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /* Static method: load(name) */
+
+  /**
+   * Maps the image of the world with the specified name into memory and builds the world from it.
+   *
+   * @param name The name of the adventure
+   * @return The loaded world
+   * @usage AdvWorld world = AdvWorldImage.load(name);
+   */
+  public static AdvWorld load(String name) throws IOException {
+    return load(name, 0);
+  }
+
+  /**
+   * Maps the image of the world with the specified name into memory and builds the world from it.
+   * If cacheSize is positive, the room descriptions are not decoded: they stay in the mapped file
+   * and are served through an AdvDescriptionCache holding at most cacheSize descriptions.
+   *
+   * @param name The name of the adventure
+   * @param cacheSize The capacity of the description cache, or 0 to decode every description now
+   * @return The loaded world
+   * @usage AdvWorld world = AdvWorldImage.load(name, cacheSize);
+   */
+  public static AdvWorld load(String name, int cacheSize) throws IOException {
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(getPath(name), StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    return read(name, buffer, cacheSize);
+  }
+
+  /* Static method: read(name, buffer) */
+
+  /**
+   * Builds a world from an image held in a buffer.
+   *
+   * @param name The name of the adventure
+   * @param buffer The bytes of the image
+   * @param cacheSize The capacity of the description cache, or 0 to decode every description now
+   * @return The world stored in the image
+   * @usage AdvWorld world = AdvWorldImage.read(name, buffer, cacheSize);
+   */
+  public static AdvWorld read(String name, ByteBuffer buffer, int cacheSize) throws IOException {
+    Reader in = new Reader(buffer);
+    if (in.buffer.getInt() != MAGIC) {
+      throw new IOException(getPath(name) + " is not a world image");
+    }
+    int version = in.buffer.getInt();
+    if (version != VERSION) {
+      throw new IOException(getPath(name) + " has version " + version + ", expected " + VERSION);
+    }
+    in.buffer.position(in.buffer.position() + 8 * 2 * SOURCES.length);
+
+    int roomCount = in.buffer.getInt();
+    int[] numbers = new int[roomCount];
+    String[] names = new String[roomCount];
+    int[] textOffsets = new int[roomCount];
+    int[] textLengths = new int[roomCount];
+    int[] lineCounts = new int[roomCount];
+    AdvMotionTableEntry[][] tables = new AdvMotionTableEntry[roomCount][];
+    for (int i = 0; i < roomCount; i++) {
+      numbers[i] = in.buffer.getInt();
+      names[i] = in.readString();
+      textOffsets[i] = in.buffer.getInt();
+      textLengths[i] = in.buffer.getInt();
+      lineCounts[i] = in.buffer.getInt();
+      AdvMotionTableEntry[] table = new AdvMotionTableEntry[in.buffer.getInt()];
+      for (int j = 0; j < table.length; j++) {
+        String dir = in.readString();
+        int destination = in.buffer.getInt();
+        table[j] = new AdvMotionTableEntry(dir, destination, in.readString());
+      }
+      tables[i] = table;
+    }
+
+    int objectCount = in.buffer.getInt();
+    List<AdvObject> objects = new ArrayList<>(objectCount);
+    for (int i = 0; i < objectCount; i++) {
+      String objectName = in.readString();
+      String description = in.readString();
+      objects.add(AdvObject.create(objectName, description, in.buffer.getInt()));
+    }
+
+    int synonymCount = in.buffer.getInt();
+    Map<String, String> synonyms = new HashMap<>();
+    for (int i = 0; i < synonymCount; i++) {
+      String key = in.readString();
+      synonyms.put(key, in.readString());
+    }
+
+    int textLength = in.buffer.getInt();
+    int textStart = in.buffer.position();
+    SortedMap<Integer, AdvRoom> rooms = new TreeMap<>();
+    AdvDescriptionCache cache = null;
+    if (cacheSize > 0) {
+      ByteBuffer text = in.buffer.slice();
+      text.limit(textLength);
+      cache = new AdvDescriptionCache(text, cacheSize);
+      for (int i = 0; i < roomCount; i++) {
+        rooms.put(numbers[i], AdvRoom.createLazy(numbers[i], names[i], cache, textOffsets[i],
+            textLengths[i], lineCounts[i], tables[i]));
+      }
+    } else {
+      for (int i = 0; i < roomCount; i++) {
+        in.buffer.position(textStart + textOffsets[i]);
+        String[] description = splitLines(in.readBytes(textLengths[i]), lineCounts[i]);
+        rooms.put(numbers[i], AdvRoom.create(numbers[i], names[i], description, tables[i]));
+      }
+    }
+    in.buffer.position(textStart + textLength);
+    return AdvWorld.create(name, rooms, objects, synonyms, cache);
+  }
+
+  // splits text that was stored with newlines between its lines
+  static String[] splitLines(String text, int lineCount) {
+    String[] lines = new String[lineCount];
+    int from = 0;
+    for (int i = 0; i < lineCount; i++) {
+      int to = (i == lineCount - 1) ? text.length() : text.indexOf('\n', from);
+      lines[i] = text.substring(from, to);
+      from = to + 1;
+    }
+    return lines;
+  }
+
+  /* Private class: Reader */
+
+  /**
+   * This class reads strings from an image, reusing one scratch array for the bytes.
+   */
+
+  private static class Reader {
+
+    private final ByteBuffer buffer;
+    private byte[] scratch = new byte[256];
+
+    Reader(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    String readString() {
+      int length = buffer.getInt();
+      return (length < 0) ? null : readBytes(length);
+    }
+
+    String readBytes(int length) {
+      if (scratch.length < length) {
+        scratch = new byte[Math.max(length, 2 * scratch.length)];
+      }
+      buffer.get(scratch, 0, length);
+      return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Compiles each world named on the command line and reports the time needed to load it from the
+   * text files and from the image. The first load of each kind is the cold start; the average
+   * covers the loads that follow it.
+   */
+  public static void main(String[] args) throws IOException {
+    int runs = 20;
+    for (String name : args) {
+      compile(name);
+      long textCold = timeLoad(() -> AdvWorld.loadText(name));
+      long imageCold = timeLoad(() -> load(name));
+      long textTotal = 0;
+      long imageTotal = 0;
+      for (int i = 0; i < runs; i++) {
+        textTotal += timeLoad(() -> AdvWorld.loadText(name));
+        imageTotal += timeLoad(() -> load(name));
+      }
+      System.out.printf("%s: %d bytes%n", getPath(name), Files.size(getPath(name)));
+      System.out.printf("  text : cold %8.2f ms, warm %8.2f ms%n", textCold / 1e6,
+          textTotal / 1e6 / runs);
+      System.out.printf("  image: cold %8.2f ms, warm %8.2f ms%n", imageCold / 1e6,
+          imageTotal / 1e6 / runs);
+    }
+  }
+
+  private interface Loader {
+
+    AdvWorld load() throws IOException;
+  }
+
+  private static long timeLoad(Loader loader) throws IOException {
+    long start = System.nanoTime();
+    loader.load();
+    return System.nanoTime() - start;
+  }
+}
@@ -1,80 +1,77 @@
-
 /*
  * File: Adventure.java
  * --------------------
  * This program plays the Adventure game from Assignment #4.
  */
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Scanner;
-import java.util.SortedMap;
-import java.util.TreeMap;
 
 /* Class: Adventure */
 
 /**
- * This class is the main program class for the Adventure game.
+ * This class is the main program class for the Adventure game. Each instance is one game being
+ * played on a shared AdvWorld: it keeps only the state of that player, which is the current room
+ * and the location of every object, recorded in an AdvObjectLocations index.
  */
 
 public class Adventure {
 
   // Use this scanner for any console input
   private static Scanner scan = new Scanner(System.in);
-  private SortedMap<Integer, AdvRoom> rooms = new TreeMap<>();
-  private List<AdvObject> inventory = new ArrayList<>();
-  private Map<String, String> synonyms = new HashMap<>();
+  private final AdvWorld world;
+  private final AdvMotionGraph graph;
+  private final AdvVocabulary vocabulary;
+  private final AdvCommandRegistry commands;
+  private final AdvParsedCommand parsed = new AdvParsedCommand();
+  private AdvOutput out;
+  private final AdvObjectLocations locations;
   private AdvRoom currentRoom;
+  private int roomIndex = AdvMotionGraph.END;
   private boolean gameOn = true;
+  private boolean confirmingQuit;
+  // set when a command of the current batch prints "Command not found"
+  private boolean failed;
+  // the output of executeBatch, created by its first call
+  private AdvByteArrayOutput batchOutput;
+  private AdvMetrics metrics;
+  private AdvEventBus events;
+  // the LOOK output of the last changed room, rendered from the object locations
+  private AdvRoom lookRoom;
+  private byte[] lookBytes;
+
+  public Adventure(String name) throws IOException {
+    this(AdvWorldCache.getShared().get(name), new AdvConsoleOutput());
+  }
 
-  public Adventure(String name) {
-
-    // Read the file
-    // Read the room file: name + "Rooms.txt" -> game.rooms
-    try {
-      Scanner in = new Scanner(new FileReader(name + "Rooms.txt"));
-      AdvRoom room = AdvRoom.readFromFile(in);
-      while (room != null) {
-        rooms.put(room.getRoomNumber(), room);
-        room = AdvRoom.readFromFile(in);
-      }
-      // System.out.println(rooms.toString());
-
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
-
-    // read the object file: name + "Objects.txt"
-    try {
-      Scanner in = new Scanner(new FileReader(name + "Objects.txt"));
-      AdvObject object = AdvObject.readFromFile(in);
-      while (object != null) {
-        rooms.get(object.getInitialLocation()).addObject(object);
-        object = AdvObject.readFromFile(in);
-      }
-      // System.out.println(inventory.toString());
-
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
+  /**
+   * Creates a new game on a world that has already been loaded. Any number of games may share the
+   * same world. The output of the game is collected in an AdvByteArrayOutput.
+   *
+   * @param world The world to play in
+   * @usage Adventure game = new Adventure(world);
+   */
+  public Adventure(AdvWorld world) {
+    this(world, new AdvByteArrayOutput());
+  }
 
-    // read the synonym file : name + "Synonyms.txt"
-    try {
-      BufferedReader in = new BufferedReader(new FileReader(name + "Synonyms.txt"));
-      String line;
-      while ((line = in.readLine()) != null) {
-        String[] values = line.split("=");
-        this.synonyms.put(values[0], values[1]);
-      }
-      // System.out.println(synonyms);
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
+  /**
+   * Creates a new game on a world that has already been loaded, writing its output to the
+   * specified sink.
+   *
+   * @param world The world to play in
+   * @param output The sink that receives the output of every turn
+   * @usage Adventure game = new Adventure(world, output);
+   */
+  public Adventure(AdvWorld world, AdvOutput output) {
+    this.world = world;
+    this.out = output;
+    this.graph = world.getGraph();
+    this.vocabulary = world.getVocabulary();
+    this.commands = world.getCommands();
+    this.locations = new AdvObjectLocations(world);
   }
 
   /**
@@ -88,7 +85,7 @@ public class Adventure {
   /**
    * Runs the adventure program
    */
-  public static void main(String[] args) {
+  public static void main(String[] args) throws IOException {
     // AdventureStub.main(args);
     System.out.print("What will be your adventure today?");
     String name = scan.nextLine();
@@ -98,85 +95,255 @@ public class Adventure {
 
   // run the game
   public void run() {
-    currentRoom = rooms.get(rooms.firstKey());
+    start();
+    while (gameOn) {
+      step(scan.nextLine());
+    }
+  }
+
+  /* Method: start() */
+
+  /**
+   * Puts the player in the first room and writes the text shown at the start of the game, followed
+   * by the prompt for the first command, to the output as one turn.
+   *
+   * @usage game.start();
+   */
+  public void start() {
+    enterRoom(0);
+    if (events != null) {
+      events.publish(AdvEventBus.ROOM_ENTERED, currentRoom.getRoomNumber(), 0);
+    }
     executeLookCommand();
+    runForcedMotions();
+    prompt();
+    out.flush();
+  }
 
-    // loop ask for command
-    while (gameOn) {
-      String[] parts;
-      if (currentRoom==null||(!currentRoom.getMotionTable()[0].getDirection().contains("FORCED"))) {
-        System.out.print("> ");
-        String command = scan.nextLine().trim().toUpperCase();
-
-        // process the command
-        // split on one or more spaces: \s+
-        parts = command.split("\\s+");
-
-        // Replace any woed with its synonym
-        // Loop through the map of synonyms
-        // if parts[i] is a key, replace it with the value
-        for (int i = 0; i < parts.length; i++) {
-          String part = parts[i];
-          if (synonyms.containsKey(part)) {
-            parts[i] = synonyms.get(part);
-          }
+  /* Method: step(input) */
+
+  /**
+   * Executes one line of input typed by the player and writes everything the game prints in
+   * response, followed by the prompt for the next line, to the output as one turn. This method
+   * never reads from System.in, and only a game created with a console sink writes to System.out,
+   * so games on different threads do not interfere with each other. A single game must not be
+   * stepped from two threads at once.
+   *
+   * <p>A line may hold several commands separated by semicolons or commas, such as "w, w, d, s,
+   * take nugget". They are executed in order as one turn, with a single prompt at the end, and the
+   * rest of the line is skipped once a command fails or the game ends.
+   *
+   * @param input The line typed by the player
+   * @usage game.step(input);
+   */
+  public void step(String input) {
+    if (!gameOn) {
+      return;
+    }
+    if (!runLine(input)) {
+      runCommand(input);
+    }
+    prompt();
+    out.flush();
+  }
+
+  /* Method: executeBatch(inputs) */
+
+  /**
+   * Executes a sequence of commands as one turn and returns everything the game printed, followed
+   * by the prompt for the next command. The batch stops early when a command fails, for example a
+   * move in a direction without an exit, or when the game ends. The output of the batch goes to the
+   * returned string instead of the sink of the game.
+   *
+   * @param inputs The commands, one per element
+   * @return The output of the batch
+   * @usage String text = game.executeBatch(inputs);
+   */
+  public String executeBatch(List<String> inputs) {
+    AdvOutput sink = out;
+    if (batchOutput == null) {
+      batchOutput = new AdvByteArrayOutput();
+    }
+    out = batchOutput;
+    try {
+      for (int i = 0; i < inputs.size() && runCommand(inputs.get(i)); i++) {
+        // each command runs in turn until one fails
+      }
+      prompt();
+      out.flush();
+      return batchOutput.toString();
+    } finally {
+      batchOutput.reset();
+      out = sink;
+    }
+  }
+
+  // runs the commands of a line with separators and returns false if it has none, or if it has
+  // nothing but separators and spaces, so that the line runs as a single unknown command
+  private boolean runLine(String input) {
+    int separator = findSeparator(input, 0);
+    if (separator < 0) {
+      return false;
+    }
+    int from = 0;
+    boolean ran = false;
+    while (true) {
+      int end = (separator < 0) ? input.length() : separator;
+      String command = input.substring(from, end).trim();
+      if (!command.isEmpty()) {
+        ran = true;
+        if (!runCommand(command)) {
+          return true;
         }
-      } else {
-        parts = new String[1];
-        parts[0] = "FORCED";
       }
+      if (separator < 0) {
+        return ran;
+      }
+      from = separator + 1;
+      separator = findSeparator(input, from);
+    }
+  }
 
-      if (parts.length > 0) {
-        AdvCommand cmd = null;
-        AdvObject obj = null;
-        if (parts.length > 1) {
-          for (int j = 0; j < currentRoom.getObjectCount(); j++) {
-            if (currentRoom.getObject(j) != null && currentRoom.getObject(j).getName()
-                .equals(parts[1])) {
-              obj = currentRoom.getObject(j);
-            }
-          }
-          for (AdvObject item : inventory) {
-            if (item != null && item.getName().equals(parts[1])) {
-              obj = item;
-            }
-          }
+  private static int findSeparator(String input, int from) {
+    for (int i = from; i < input.length(); i++) {
+      if (input.charAt(i) == ';' || input.charAt(i) == ',') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // runs one command, with the forced motions that follow it, and returns true if the game goes on
+  // and the command did not fail
+  private boolean runCommand(String input) {
+    failed = false;
+    if (confirmingQuit) {
+      confirmingQuit = false;
+      if (input.toUpperCase().equals("Y")) {
+        println("See you later!");
+        gameOn = false;
+        if (events != null) {
+          events.publish(AdvEventBus.GAME_OVER, currentRoom.getRoomNumber(), 0);
         }
+      }
+    } else {
+      executeCommand(input);
+    }
+    runForcedMotions();
+    return gameOn && !failed;
+  }
 
-        switch (parts[0]) {
-          case "TAKE":
-            // take command
-            cmd = AdvCommand.TAKE;
-            break;
-          case "DROP":
-            // drop command
-            cmd = AdvCommand.DROP;
-            break;
-          case "HELP":
-            cmd = AdvCommand.HELP;
-            break;
-          case "LOOK":
-            cmd = AdvCommand.LOOK;
-            break;
-          case "INVENTORY":
-            cmd = AdvCommand.INVENTORY;
-            break;
-          case "QUIT":
-            cmd = AdvCommand.QUIT;
-            break;
-          // other commands
-          // LOOK , I (inventory), HELP,
-          default: // any motion command
-            cmd = new AdvMotionCommand(parts[0]);
+  /* Method: isGameOn() */
+
+  /**
+   * Returns true until the player quits or reaches the end of the game.
+   *
+   * @return true if the game is still running
+   * @usage if (game.isGameOn()) . . .
+   */
+  public boolean isGameOn() {
+    return gameOn;
+  }
+
+  private void executeCommand(String input) {
+    // split the command into words and map each word, or the word it is a synonym of, to its token
+    if (vocabulary.tokenize(input, parsed) == 0) {
+      commandNotFound();
+      return;
+    }
+
+    // look up the command of the first word; a word that is not a verb or a direction of this
+    // world has none
+    AdvCommand cmd = commands.getCommand(parsed.getToken(0));
+    if (cmd == null) {
+      if (metrics != null) {
+        metrics.recordUnknownCommand();
+      }
+      commandNotFound();
+      if (parsed.getToken(0) < 0) {
+        suggest(input);
+      }
+      return;
+    }
+
+    // several objects may share the name of the second word: TAKE wants one in the room and every
+    // other command one that is carried, and failing that whichever one the player can reach
+    AdvObject obj = null;
+    if (parsed.getCount() > 1) {
+      int token = parsed.getToken(1);
+      boolean preferRoom = cmd == AdvCommand.TAKE;
+      for (int id = (token < 0) ? -1 : vocabulary.getObject(token); id >= 0;
+          id = vocabulary.getNextObject(id)) {
+        boolean carried = locations.isCarried(id);
+        if (carried || locations.getLocation(id) == roomIndex) {
+          obj = world.getObjects().get(id);
+          if (carried != preferRoom) {
             break;
+          }
         }
-        // execute the command
-        cmd.execute(this, obj);
       }
     }
+
+    // execute the command
+    if (metrics == null) {
+      cmd.execute(this, obj);
+    } else {
+      long start = System.nanoTime();
+      cmd.execute(this, obj);
+      metrics.recordCommand(parsed.getToken(0), System.nanoTime() - start);
+    }
+  }
+
+  // offers the word closest to the first word of a command that matched nothing
+  private void suggest(String input) {
+    String word = input.trim();
+    for (int i = 0; i < word.length(); i++) {
+      if (word.charAt(i) <= ' ') {
+        word = word.substring(0, i);
+        break;
+      }
+    }
+    String suggestion = vocabulary.getSuggestion(word);
+    if (suggestion != null) {
+      println("Did you mean " + suggestion + "?");
+    }
   }
 
+  // follow FORCED exits until the player is in a room that waits for input. Every room on the way
+  // is entered and shown, as transcripts expect, so a chain is walked one room at a time. For a
+  // chain of FORCED exits without keys the last room is known from load time, where loops were
+  // rejected, so that walk needs no guard. Exits that need a key are resolved hop by hop against
+  // what the player carries, since their chain ends would differ for every set of keys, and a loop
+  // through them is cut off once every room could have been seen
+  private void runForcedMotions() {
+    int keyedMoves = 0;
+    while (gameOn && roomIndex != AdvMotionGraph.END && graph.isForced(roomIndex)) {
+      BitSet carried = locations.getCarried();
+      int end = graph.getForcedChainEnd(roomIndex);
+      if (end != roomIndex) {
+        for (int r = graph.findForcedDestination(roomIndex, carried); r != end;
+            r = graph.findForcedDestination(r, carried)) {
+          arrive(r);
+        }
+        arrive(end);
+        continue;
+      }
+      if (keyedMoves++ >= graph.getRoomCount()) {
+        break;
+      }
+      int next = graph.findForcedDestination(roomIndex, carried);
+      if (next == AdvMotionGraph.NO_EXIT) {
+        commandNotFound();
+        break;
+      }
+      arrive(next);
+    }
+  }
 
+  private void enterRoom(int index) {
+    roomIndex = index;
+    currentRoom = graph.getRoom(index);
+  }
 
   /* Method: executeMotionCommand(direction) */
 
@@ -187,58 +354,270 @@ public class Adventure {
    * @param direction The string indicating the direction of motion
    */
   public void executeMotionCommand(String direction) {
-    int nextRoom = -1;
-    for (int i = 0; i < currentRoom.getMotionTable().length; i++) {
-      AdvMotionTableEntry entry = currentRoom.getMotionTable()[i];
-      if (entry.getDirection().equals(direction) && (entry.getKeyName() == null || (
-          entry.getKeyName() != null && hasItem(entry.getKeyName())))) {
-        nextRoom = entry.getDestinationRoom();
-        break;
+    moveTo(graph.getDirectionId(direction));
+  }
+
+  /**
+   * Executes a motion command for a direction given as its token in the motion graph of the world.
+   * This method is called from the AdvMotionCommand objects shared through the command registry.
+   *
+   * @param direction The direction token, as returned by AdvMotionGraph.getDirectionId
+   */
+  public void executeMotionCommand(int direction) {
+    moveTo(direction);
+  }
+
+  private void moveTo(int direction) {
+    int exit = (direction < 0) ? -1 : graph.findExit(roomIndex, direction, locations.getCarried());
+    if (exit == -1) {
+      if (metrics != null) {
+        metrics.recordFailedMove(direction >= 0 && graph.hasExit(roomIndex, direction));
+      }
+      if (events != null) {
+        events.publish(AdvEventBus.MOVE_REJECTED, currentRoom.getRoomNumber(), direction);
       }
+      commandNotFound();
+      return;
     }
-    if (nextRoom == -1) {
-      System.out.println("Command not found");
-    } else {
-      currentRoom = rooms.get(nextRoom);
-      executeLookCommand();
-//      while (currentRoom.getMotionTable()[0].getDirection().equals("FORCED")) {
-//        nextRoom = currentRoom.getMotionTable()[0].getDestinationRoom();
-//        currentRoom = rooms.get(nextRoom);
-//        if (currentRoom!=null){
-//          executeLookCommand();
-//        }
-        if (nextRoom == 0) {
-          System.out.println("GAME OVER!");
-          gameOn = false;
-//          break;
-//        }
+    arrive(graph.getDestination(exit));
+  }
+
+  private void commandNotFound() {
+    println("Command not found");
+    failed = true;
+  }
+
+  private void arrive(int index) {
+    int from = currentRoom.getRoomNumber();
+    enterRoom(index);
+    if (metrics != null && index != AdvMotionGraph.END) {
+      metrics.recordRoomEntry(index);
+    }
+    if (events != null) {
+      if (index == AdvMotionGraph.END) {
+        events.publish(AdvEventBus.GAME_OVER, from, 1);
+      } else {
+        events.publish(AdvEventBus.ROOM_ENTERED, currentRoom.getRoomNumber(), 0);
       }
     }
+    executeLookCommand();
+    if (roomIndex == AdvMotionGraph.END) {
+      println("GAME OVER!");
+      gameOn = false;
+    }
+  }
+
+  /* Method: println(line) */
+
+  /**
+   * Adds a line to the output of the current turn. Commands added through AdvVerbProvider use this
+   * method to talk to the player.
+   *
+   * @param line The text of the line
+   * @usage game.println(line);
+   */
+  public void println(String line) {
+    out.println(line);
+  }
+
+  /* Method: getOutput() */
+
+  /**
+   * Returns the sink this game writes its output to.
+   *
+   * @return The output sink
+   * @usage AdvOutput output = game.getOutput();
+   */
+  public AdvOutput getOutput() {
+    return out;
+  }
+
+  /* Method: setOutput(output) */
+
+  /**
+   * Sends the output of the following turns to another sink, for example when a player reconnects.
+   * Text of the current turn that has not been flushed is discarded.
+   *
+   * @param output The new output sink
+   * @usage game.setOutput(output);
+   */
+  public void setOutput(AdvOutput output) {
+    out.discard();
+    out = output;
+  }
+
+  /* Method: getWorld() */
+
+  /**
+   * Returns the world this game is played in.
+   *
+   * @return The world of the game
+   * @usage AdvWorld world = game.getWorld();
+   */
+  public AdvWorld getWorld() {
+    return world;
+  }
+
+  /* Method: setMetrics(metrics) */
+
+  /**
+   * Makes this game record its commands, failed moves and room entries in the specified metrics,
+   * or stops recording if metrics is null.
+   *
+   * @param metrics The metrics of the world, or null
+   * @usage game.setMetrics(metrics);
+   */
+  public void setMetrics(AdvMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /* Method: setEventBus(events) */
+
+  /**
+   * Makes this game publish its room entries, TAKE and DROP, rejected moves and end into the
+   * specified bus, or stops publishing if events is null. The game must be the only publisher on
+   * the bus.
+   *
+   * @param events The event bus of this game, or null
+   * @usage game.setEventBus(events);
+   */
+  public void setEventBus(AdvEventBus events) {
+    this.events = events;
+  }
+
+  /* Method: getEventBus() */
+
+  /**
+   * Returns the event bus this game publishes into, or null.
+   *
+   * @return The event bus, or null
+   * @usage AdvEventBus events = game.getEventBus();
+   */
+  public AdvEventBus getEventBus() {
+    return events;
+  }
+
+  /* Method: getLocations() */
+
+  /**
+   * Returns the index that records where the objects of this game are.
+   *
+   * @return The object locations of this game
+   * @usage AdvObjectLocations locations = game.getLocations();
+   */
+  public AdvObjectLocations getLocations() {
+    return locations;
+  }
+
+  /* Method: getCurrentRoom() */
 
+  /**
+   * Returns the room the player is in, or null once the game has reached its end.
+   *
+   * @return The current room, or null
+   * @usage AdvRoom room = game.getCurrentRoom();
+   */
+  public AdvRoom getCurrentRoom() {
+    return currentRoom;
   }
 
-  private boolean hasItem(String s) {
-    for (AdvObject object : inventory) {
-      if (object != null && object.getName().equals(s)) {
-        return true;
+  private void prompt() {
+    if (gameOn && !confirmingQuit) {
+      out.print("> ");
+    }
+  }
+
+  /* Method: saveState() */
+
+  /**
+   * Returns a snapshot of the state of this game. The command count of the snapshot is 0; a
+   * journal sets it with AdvSnapshot.withSequence.
+   *
+   * @return A snapshot of this game
+   * @usage AdvSnapshot snapshot = game.saveState();
+   */
+  public AdvSnapshot saveState() {
+    List<AdvObject> inventory = locations.getObjectsIn(AdvObjectLocations.CARRIED);
+    int[] carriedIds = new int[inventory.size()];
+    for (int i = 0; i < carriedIds.length; i++) {
+      carriedIds[i] = inventory.get(i).getId();
+    }
+    int[] moved = locations.getMovedObjects();
+    int count = moved.length - carriedIds.length;
+    int[] movedObjects = new int[count];
+    int[] movedRooms = new int[count];
+    int n = 0;
+    for (int id : moved) {
+      if (!locations.isCarried(id)) {
+        movedObjects[n] = id;
+        movedRooms[n++] = graph.getRoom(locations.getLocation(id)).getRoomNumber();
       }
     }
-    return false;
+    int roomNumber = (currentRoom == null) ? 0 : currentRoom.getRoomNumber();
+    return new AdvSnapshot(0, roomNumber, gameOn, confirmingQuit, carriedIds, movedObjects,
+        movedRooms);
+  }
+
+  /* Method: restoreState(snapshot) */
 
+  /**
+   * Replaces the state of this game with the state recorded in a snapshot taken on the same world.
+   * Objects that were moved are listed after the objects that never left their initial room, in
+   * the order the snapshot records them. A snapshot that names an object or a room this world does
+   * not have is rejected before anything changes.
+   *
+   * @param snapshot The snapshot to restore
+   * @usage game.restoreState(snapshot);
+   */
+  public void restoreState(AdvSnapshot snapshot) throws IOException {
+    int objectCount = world.getObjects().size();
+    for (int id : snapshot.getInventory()) {
+      if (id >= objectCount) {
+        throw new IOException("snapshot carries unknown object " + id);
+      }
+    }
+    int[] movedObjects = snapshot.getMovedObjects();
+    int[] movedRooms = snapshot.getMovedRooms();
+    for (int i = 0; i < movedObjects.length; i++) {
+      if (movedObjects[i] < 0 || movedObjects[i] >= objectCount) {
+        throw new IOException("snapshot moves unknown object " + movedObjects[i]);
+      }
+      if (graph.getRoomIndex(movedRooms[i]) == AdvMotionGraph.END) {
+        throw new IOException("snapshot moves object " + movedObjects[i] + " to unknown room "
+            + movedRooms[i]);
+      }
+    }
+    if (snapshot.getRoomNumber() != 0
+        && graph.getRoomIndex(snapshot.getRoomNumber()) == AdvMotionGraph.END) {
+      throw new IOException("snapshot is in unknown room " + snapshot.getRoomNumber());
+    }
+    locations.reset();
+    lookRoom = null;
+    for (int id : snapshot.getInventory()) {
+      if (id >= 0) {
+        locations.moveTo(id, AdvObjectLocations.CARRIED);
+      }
+    }
+    for (int i = 0; i < movedObjects.length; i++) {
+      locations.moveTo(movedObjects[i], graph.getRoomIndex(movedRooms[i]));
+    }
+    enterRoom((snapshot.getRoomNumber() == 0) ? AdvMotionGraph.END
+        : graph.getRoomIndex(snapshot.getRoomNumber()));
+    gameOn = snapshot.isGameOn();
+    confirmingQuit = snapshot.isConfirmingQuit();
+    out.discard();
   }
 
   /* Method: executeQuitCommand() */
 
   /**
    * Implements the QUIT command. This command should ask the user to confirm the quit request and,
-   * if so, should exit from the play method. If not, the program should continue as usual.
+   * if so, should exit from the play method. If not, the program should continue as usual. The
+   * answer is the next line passed to step.
    */
   public void executeQuitCommand() {
-    System.out.println("Are you sure (Y or N)?");
-    if (scan.nextLine().toUpperCase().equals("Y")) {
-      System.out.println("See you later!");
-      gameOn = false;
-    }
+    println("Are you sure (Y or N)?");
+    confirmingQuit = true;
 
     // super.executeQuitCommand(); // Replace with your code
   }
@@ -249,8 +628,8 @@ public class Adventure {
    * Implements the HELP command. Your code must include some help text for the user.
    */
   public void executeHelpCommand() {
-    System.out.println("Available shortcuts: ");
-    System.out.println(synonyms);
+    println("Available shortcuts: ");
+    println(String.valueOf(world.getSynonyms()));
     // super.executeHelpCommand(); // Replace with your code
   }
 
@@ -258,16 +637,23 @@ public class Adventure {
 
   /**
    * Implements the LOOK command. This method should give the full description of the room and its
-   * contents.
+   * contents. The text is written from a pre-rendered copy: the one kept by the room while its
+   * contents are the initial ones, or one kept by this game for the last room it changed.
    */
   public void executeLookCommand() {
     if (currentRoom != null) {
-      for (int i = 0; i < currentRoom.getDescription().length; i++) {
-        System.out.println(currentRoom.getDescription()[i]);
-      }
-      for (int j = 0; j < currentRoom.getObjectCount(); j++) {
-        System.out.println("There is " + currentRoom.getObject(j) + " here");
+      byte[] bytes;
+      if (!locations.isChanged(roomIndex)) {
+        bytes = currentRoom.getLookBytes();
+      } else {
+        if (lookRoom != currentRoom) {
+          lookBytes = AdvRoom.renderLook(currentRoom.getDescription(),
+              locations.getObjectsIn(roomIndex));
+          lookRoom = currentRoom;
+        }
+        bytes = lookBytes;
       }
+      out.write(bytes, 0, bytes.length);
     }
   }
 
@@ -278,10 +664,8 @@ public class Adventure {
    * carrying.
    */
   public void executeInventoryCommand() {
-    for (AdvObject item : inventory) {
-      if (item != null) {
-        System.out.println(item.getName() + ": " + item.getDescription());
-      }
+    for (AdvObject item : locations.getObjectsIn(AdvObjectLocations.CARRIED)) {
+      println(item.getName() + ": " + item.getDescription());
     }
   }
 
@@ -289,27 +673,37 @@ public class Adventure {
 
   /**
    * Implements the TAKE command. This method should check that the object is in the room and
-   * deliver a suitable message if not.
+   * deliver a suitable message if not. Taking an object that is already carried changes nothing.
    *
    * @param obj The AdvObject you want to take
    */
   public void executeTakeCommand(AdvObject obj) {
-    inventory.add(obj);
-    currentRoom.removeObject(obj);
-    System.out.println(obj + " taken");
+    if (obj != null && !locations.isCarried(obj.getId())) {
+      locations.moveTo(obj.getId(), AdvObjectLocations.CARRIED);
+      lookRoom = null;
+      if (events != null) {
+        events.publish(AdvEventBus.OBJECT_TAKEN, currentRoom.getRoomNumber(), obj.getId());
+      }
+    }
+    println(obj + " taken");
   }
 
   /* Method: executeDropCommand(obj) */
 
   /**
    * Implements the DROP command. This method should check that the user is carrying the object and
-   * deliver a suitable message if not.
+   * deliver a suitable message if not. Dropping an object that is not carried changes nothing.
    *
    * @param obj The AdvObject you want to drop
    */
   public void executeDropCommand(AdvObject obj) {
-    inventory.remove(obj);
-    currentRoom.addObject(obj);
-    System.out.println(obj + " dropped");
+    if (obj != null && locations.isCarried(obj.getId())) {
+      locations.moveTo(obj.getId(), roomIndex);
+      lookRoom = null;
+      if (events != null) {
+        events.publish(AdvEventBus.OBJECT_DROPPED, currentRoom.getRoomNumber(), obj.getId());
+      }
+    }
+    println(obj + " dropped");
   }
 }
@@ -1,14 +1,55 @@
 import java.io.File;
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
 public class AdventureTest {
 
+  private static int failures;
+
   public static void main(String[] args) {
     System.out.println("\n\nTesting Small\n\n");
     testSmallAdventure();
     System.out.println("\n\nTesting Crowther\n\n");
     testCrowtherAdventure();
+    System.out.println("\n\nTesting output\n\n");
+    testOutput();
+    System.out.println("\n\nTesting journal\n\n");
+    testJournal();
+    System.out.println("\n\nTesting event bus\n\n");
+    testEventBus();
+    System.out.println("\n\nTesting format errors\n\n");
+    testFormatErrors();
+    System.out.println("\n\nTesting objects with the same name\n\n");
+    testSameName();
+    System.out.println("\n\nTesting corrupt snapshots\n\n");
+    testCorruptSnapshot();
+    System.out.println("\n\nTesting vocabulary\n\n");
+    testVocabulary();
+    System.out.println("\n\nTesting batches\n\n");
+    testBatches();
+    System.out.println("\n\nTesting verb providers\n\n");
+    testVerbProviders();
+    System.out.println("\n\nTesting server\n\n");
+    testServer();
+    System.out.println("\n\nTesting world analyzer\n\n");
+    testAnalyzer();
+    if (failures > 0) {
+      System.exit(1);
+    }
   }
 
   public static void testSmallAdventure() {
@@ -33,4 +74,415 @@ public class AdventureTest {
     }
   }
 
+  public static void testOutput() {
+    // non-ASCII text takes more bytes than chars, so the ASCII after it must not overrun
+    AdvByteArrayOutput out = new AdvByteArrayOutput();
+    StringBuilder sb = new StringBuilder("\u00e9\u20ac");
+    while (sb.length() < 256) {
+      sb.append('x');
+    }
+    out.print(sb);
+    out.println("caf\u00e9 \ud83d\ude00 ok");
+    out.flush();
+    String expected = sb + "caf\u00e9 \ud83d\ude00 ok\n";
+    check("mixed non-ASCII and ASCII at the buffer limit", out.toString().equals(expected));
+  }
+
+  public static void testJournal() {
+    // eight commands with a snapshot after the fifth, so a restore reads the snapshot and then
+    // replays the three commands of the journal tail
+    String[] commands = {"in", "take keys", "out", "down", "d", "down", "d", "take lamp"};
+    Path dir = null;
+    try {
+      dir = Files.createTempDirectory("journal");
+      AdvWorld world = AdvWorld.load("Small");
+      Adventure game = new Adventure(world, new AdvByteArrayOutput());
+      game.start();
+      AdvSnapshot expected;
+      try (AdvJournal journal = new AdvJournal(dir, "test", 2, 1000, 5)) {
+        for (String command : commands) {
+          journal.step(game, command);
+        }
+        expected = game.saveState();
+      }
+      check("journal keeps the snapshot and the tail after it",
+          Files.exists(dir.resolve(String.format("test-%016d.snap", 5)))
+              && Files.size(dir.resolve(String.format("test-%016d.log", 6))) > 0);
+      try (AdvJournal journal = new AdvJournal(dir, "test", 2, 1000, 5)) {
+        Adventure restored = journal.restore(world);
+        AdvSnapshot actual = restored.saveState();
+        check("journal restores the sequence", journal.getSequence() == commands.length);
+        check("journal restores the room", actual.getRoomNumber() == expected.getRoomNumber());
+        check("journal restores the inventory",
+            Arrays.equals(actual.getInventory(), expected.getInventory()));
+        check("journal restores the moved objects",
+            Arrays.equals(actual.getMovedObjects(), expected.getMovedObjects())
+                && Arrays.equals(actual.getMovedRooms(), expected.getMovedRooms()));
+      }
+    } catch (IOException e) {
+      check("journal: " + e, false);
+    } finally {
+      delete(dir);
+    }
+  }
+
+  public static void testEventBus() {
+    // DROP: the ring holds four events, so the fifth and sixth are dropped and the subscription
+    // sees the first four without a gap
+    AdvEventBus bus = new AdvEventBus(4, AdvEventBus.DROP);
+    AdvEventBus.Subscription subscription = bus.subscribe();
+    int published = 0;
+    for (int i = 0; i < 6; i++) {
+      if (bus.publish(AdvEventBus.ROOM_ENTERED, i, 0)) {
+        published++;
+      }
+    }
+    List<long[]> events = new ArrayList<>();
+    AdvEventBus.Listener listener = (seq, type, room, arg, nanos) -> events.add(
+        new long[] {seq, room});
+    subscription.poll(listener);
+    check("DROP publishes until the ring is full", published == 4 && bus.getDropped() == 2);
+    check("DROP delivers the oldest events without a gap", isRun(events, 0, 0, 4));
+    events.clear();
+    bus.publish(AdvEventBus.ROOM_ENTERED, 6, 0);
+    subscription.poll(listener);
+    check("DROP publishes again once the ring is read", isRun(events, 4, 6, 1));
+
+    // OVERWRITE: ten events into a ring of four lap the subscription, which loses the oldest six
+    bus = new AdvEventBus(4, AdvEventBus.OVERWRITE);
+    subscription = bus.subscribe();
+    for (int i = 0; i < 10; i++) {
+      bus.publish(AdvEventBus.ROOM_ENTERED, i, 0);
+    }
+    long[] lost = new long[1];
+    events.clear();
+    subscription.poll(new AdvEventBus.Listener() {
+      @Override
+      public void onEvent(long seq, int type, int room, int arg, long nanos) {
+        events.add(new long[] {seq, room});
+      }
+
+      @Override
+      public void onLost(long count) {
+        lost[0] += count;
+      }
+    });
+    check("OVERWRITE drops nothing", bus.getDropped() == 0);
+    check("OVERWRITE reports the lost events", lost[0] == 6 && subscription.getLost() == 6);
+    check("OVERWRITE delivers the newest events", isRun(events, 6, 6, 4));
+  }
+
+  public static void testFormatErrors() {
+    String rooms = "1\nHall\nA hall.\n-----\nNORTH 2\n\n2\nRoom\nA room.\n-----\nSOUTH 1\n";
+    String objects = "LAMP\nA lamp\n1\n\nROD\nA rod\n99\n";
+    checkFormatError("bad object room", rooms, objects,
+        "Objects.txt:7: object ROD is in room 99, which does not exist");
+    checkFormatError("bad motion line", rooms.replace("SOUTH 1", "SOUTH"), "",
+        "Rooms.txt:11: expected a direction and a room number");
+    checkFormatError("bad motion destination", rooms.replace("NORTH 2", "NORTH 2\nSOUTH 500"), "",
+        "Rooms.txt:6: room 1: SOUTH leads to room 500, which does not exist");
+    checkFormatError("FORCED loop without keys",
+        rooms.replace("NORTH 2", "FORCED 2").replace("SOUTH 1", "FORCED 1"), "",
+        "Rooms.txt:5: room 1: FORCED exits without keys lead back to this room");
+  }
+
+  public static void testSameName() {
+    // two lamps: the player takes the one in each room, then drops one of the two
+    String rooms = "1\nHall\nA hall.\n-----\nNORTH 2\n\n2\nRoom\nA room.\n-----\nSOUTH 1\n";
+    String objects = "LAMP\nA brass lamp\n1\n\nLAMP\nAn oil lamp\n2\n";
+    Path dir = null;
+    try {
+      dir = Files.createTempDirectory("names");
+      Adventure game = new Adventure(AdvTextLoader.load(writeWorld(dir, rooms, objects)),
+          new AdvByteArrayOutput());
+      game.start();
+      AdvObjectLocations locations = game.getLocations();
+      game.step("TAKE LAMP");
+      game.step("NORTH");
+      game.step("TAKE LAMP");
+      check("same name: both lamps can be taken",
+          locations.getObjectsIn(AdvObjectLocations.CARRIED).size() == 2);
+      game.step("DROP LAMP");
+      check("same name: a carried lamp is dropped",
+          locations.getObjectsIn(AdvObjectLocations.CARRIED).size() == 1
+              && locations.getObjectsIn(game.getWorld().getGraph().getRoomIndex(2)).size() == 1);
+    } catch (IOException e) {
+      check("same name: " + e, false);
+    } finally {
+      delete(dir);
+    }
+  }
+
+  public static void testCorruptSnapshot() {
+    try {
+      Adventure game = new Adventure(AdvWorld.load("Small"), new AdvByteArrayOutput());
+      game.start();
+      game.step("in");
+      AdvSnapshot before = game.saveState();
+      AdvSnapshot[] corrupt = {
+          new AdvSnapshot(1, 3, true, false, new int[0], new int[] {0}, new int[] {999}),
+          new AdvSnapshot(1, 3, true, false, new int[0], new int[] {99}, new int[] {3}),
+          new AdvSnapshot(1, 3, true, false, new int[] {99}, new int[0], new int[0]),
+          new AdvSnapshot(1, 999, true, false, new int[0], new int[0], new int[0])};
+      boolean rejected = true;
+      for (AdvSnapshot snapshot : corrupt) {
+        try {
+          game.restoreState(snapshot);
+          rejected = false;
+        } catch (IOException e) {
+          // expected
+        }
+      }
+      check("corrupt snapshots are rejected", rejected);
+      check("a rejected snapshot leaves the game alone",
+          game.saveState().getRoomNumber() == before.getRoomNumber()
+              && Arrays.equals(game.saveState().getMovedObjects(), before.getMovedObjects()));
+    } catch (IOException e) {
+      check("corrupt snapshots: " + e, false);
+    }
+  }
+
+  public static void testVocabulary() {
+    try {
+      AdvVocabulary small = AdvWorld.load("Small").getVocabulary();
+      check("INV stands for INVENTORY", firstWord(small, "inv").equals("INVENTORY"));
+      check("NOR stands for NORTH", firstWord(small, "nor").equals("NORTH"));
+      check("IN stays IN", firstWord(small, "in").equals("IN"));
+      check("a word that starts no token matches nothing", firstWord(small, "norht") == null);
+      AdvVocabulary crowther = AdvWorld.load("Crowther").getVocabulary();
+      check("an ambiguous prefix matches nothing", firstWord(crowther, "wa") == null);
+
+      check("NORHT suggests NORTH", "NORTH".equals(small.getSuggestion("norht")));
+      check("a word far from every spelling suggests nothing",
+          small.getSuggestion("xyzzy") == null);
+      // DORP is two edits from DOWN and from DROP, ROP one edit from DROP and from ROD
+      check("a tie suggests the first word in alphabetical order",
+          "DOWN".equals(small.getSuggestion("dorp")) && "DROP".equals(small.getSuggestion("rop")));
+
+      AdvByteArrayOutput out = new AdvByteArrayOutput();
+      Adventure game = new Adventure(AdvWorld.load("Small"), out);
+      game.start();
+      out.reset();
+      game.step("norht");
+      check("an unknown command prints the suggestion",
+          out.toString().equals("Command not found\nDid you mean NORTH?\n> "));
+    } catch (IOException e) {
+      check("vocabulary: " + e, false);
+    }
+  }
+
+  public static void testBatches() {
+    String inside = "You are inside a building, a well house for a large spring.\n"
+        + "There is KEYS here\n";
+    String outside = "You are standing at the end of a road before a small brick\n"
+        + "building.  A small stream flows out of the building and\n"
+        + "down a gully to the south.  A road runs up a small hill\n" + "to the west.\n";
+    try {
+      AdvWorld world = AdvWorld.load("Small");
+      AdvByteArrayOutput out = new AdvByteArrayOutput();
+      Adventure game = newGame(world, out);
+      game.step("in; take keys, out");
+      check("; and , separate commands",
+          out.toString().equals(inside + "KEYS taken\n" + outside + "> "));
+
+      game = newGame(world, out);
+      game.step("in;north;out");
+      check("a failed move stops the line",
+          out.toString().equals(inside + "Command not found\n> ")
+              && game.saveState().getRoomNumber() == 3);
+
+      game = newGame(world, out);
+      game.step("q; y; in");
+      check("the end of the game stops the line",
+          out.toString().equals("Are you sure (Y or N)?\nSee you later!\n") && !game.isGameOn());
+
+      game = newGame(world, out);
+      game.step("in; ;out");
+      check("empty commands are skipped", out.toString().equals(inside + outside + "> "));
+
+      game = newGame(world, out);
+      game.step(" ; , ");
+      check("a line of separators is an unknown command",
+          out.toString().startsWith("Command not found\n") && out.toString().endsWith("> "));
+
+      game = newGame(world, out);
+      String batch = game.executeBatch(Arrays.asList("in", "take keys", "out"));
+      check("executeBatch returns the output of the batch",
+          batch.equals(inside + "KEYS taken\n" + outside + "> ") && out.size() == 0);
+      game = newGame(world, out);
+      batch = game.executeBatch(Arrays.asList("in", "north", "out"));
+      check("executeBatch stops at a failed command",
+          batch.equals(inside + "Command not found\n> ") && game.saveState().getRoomNumber() == 3);
+    } catch (IOException e) {
+      check("batches: " + e, false);
+    }
+  }
+
+  public static void testVerbProviders() {
+    // the sample provider is registered in samples/META-INF/services, which is not on the class
+    // path of the game, so it is found through a class loader of its own
+    try (URLClassLoader loader = new URLClassLoader(
+        new URL[] {Paths.get("samples").toUri().toURL()}, AdventureTest.class.getClassLoader())) {
+      Map<String, AdvCommand> verbs = AdvCommandRegistry.loadVerbs(loader);
+      check("the sample provider is found",
+          verbs.get("WAIT") == AdvSampleVerbProvider.WAIT && verbs.size() == 1);
+      check("the sample provider is not installed",
+          !AdvCommandRegistry.getProvidedVerbs().containsKey("WAIT"));
+      AdvWorld world = AdvWorld.load("Small");
+      AdvVocabulary vocabulary = new AdvVocabulary(world.getGraph(), world.getObjects(),
+          world.getSynonyms(), verbs.keySet());
+      AdvCommandRegistry commands = new AdvCommandRegistry(vocabulary, world.getGraph(), verbs);
+      AdvParsedCommand parsed = new AdvParsedCommand();
+      vocabulary.tokenize("wait", parsed);
+      AdvCommand wait = commands.getCommand(parsed.getToken(0));
+      AdvByteArrayOutput out = new AdvByteArrayOutput();
+      Adventure game = newGame(world, out);
+      wait.execute(game, null);
+      out.flush();
+      check("a provided verb runs its command", out.toString().equals("Time passes.\n"));
+    } catch (IOException e) {
+      check("verb providers: " + e, false);
+    }
+
+    // BACK is both a direction of room 1 and a synonym of OUT; the BACK direction must not take
+    // over the command of OUT
+    String rooms = "1\nHall\nA hall.\n-----\nOUT 2\nBACK 3\n\n2\nRoom\nA room.\n-----\nIN 1\n\n"
+        + "3\nCave\nA cave.\n-----\nIN 1\n";
+    Path dir = null;
+    try {
+      dir = Files.createTempDirectory("verbs");
+      String name = writeWorld(dir, rooms, "");
+      Files.write(Paths.get(name + "Synonyms.txt"), "BACK=OUT\n".getBytes(StandardCharsets.UTF_8));
+      AdvByteArrayOutput out = new AdvByteArrayOutput();
+      Adventure game = newGame(AdvTextLoader.load(name), out);
+      game.step("OUT");
+      check("a direction named like a synonym keeps its own token",
+          out.toString().equals("A room.\n> ") && game.saveState().getRoomNumber() == 2);
+    } catch (IOException e) {
+      check("direction tokens: " + e, false);
+    } finally {
+      delete(dir);
+    }
+  }
+
+  // starts a game whose output, past the introduction, goes to the specified sink
+  public static void testServer() {
+    AdvServer server = new AdvServer("Small", AdvWorldCache.getShared(), 8);
+    try {
+      InetSocketAddress address = server.start(0, 1);
+      try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+        socket.setSoTimeout(10000);
+        // lines of maxLine bytes, then lines of maxLine + 1 bytes, with either terminator
+        String lines = "ABCDEFGH\nABCDEFGH\r\nABCDEFGHI\nABCDEFGHI\r\nQUIT\nY\n";
+        socket.getOutputStream().write(lines.getBytes(StandardCharsets.UTF_8));
+        String output = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        check("Lines of maxLine bytes are played and longer ones are rejected",
+            output.split("Line too long", -1).length == 3 && output.endsWith("See you later!\n"));
+      }
+    } catch (IOException e) {
+      check("Server: " + e, false);
+    } finally {
+      try {
+        server.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  public static void testAnalyzer() {
+    ForkJoinPool pool = new ForkJoinPool(1);
+    try {
+      AdvWorld world = AdvWorld.load("Crowther");
+      AdvWorldAnalyzer analyzer = new AdvWorldAnalyzer(world, pool);
+      analyzer.analyze();
+      check("Without death rooms a death into room 0 is a winning path",
+          Arrays.asList("NORTH", "XYZZY", "NORTH").equals(analyzer.getWinningPath()));
+      analyzer = new AdvWorldAnalyzer(world, pool);
+      analyzer.setDeathRooms(Arrays.asList(11, 29));
+      analyzer.analyze();
+      check("The pit and the fatal jump are not winning paths", analyzer.getWinningPath() == null);
+    } catch (IOException e) {
+      check("Analyzer: " + e, false);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private static Adventure newGame(AdvWorld world, AdvByteArrayOutput out) {
+    Adventure game = new Adventure(world, out);
+    game.start();
+    out.reset();
+    return game;
+  }
+
+  // the canonical word of the first word of a line, or null if it matches no token
+  private static String firstWord(AdvVocabulary vocabulary, String input) {
+    AdvParsedCommand parsed = new AdvParsedCommand();
+    vocabulary.tokenize(input, parsed);
+    int token = parsed.getToken(0);
+    return (token < 0) ? null : vocabulary.getWord(token);
+  }
+
+  // loads a world made of the specified files and checks the message of the error it reports
+  private static void checkFormatError(String name, String rooms, String objects,
+      String expected) {
+    Path dir = null;
+    try {
+      dir = Files.createTempDirectory("format");
+      String world = writeWorld(dir, rooms, objects);
+      try {
+        AdvTextLoader.load(world);
+        check(name, false);
+      } catch (AdvFormatException e) {
+        check(name, e.getMessage().equals(world + expected));
+      }
+    } catch (IOException e) {
+      check(name + ": " + e, false);
+    } finally {
+      delete(dir);
+    }
+  }
+
+  // writes the Rooms and Objects files of a world named Bad and returns the name to load it by
+  private static String writeWorld(Path dir, String rooms, String objects) throws IOException {
+    String world = dir.resolve("Bad").toString();
+    Files.write(Paths.get(world + "Rooms.txt"), rooms.getBytes(StandardCharsets.UTF_8));
+    Files.write(Paths.get(world + "Objects.txt"), objects.getBytes(StandardCharsets.UTF_8));
+    return world;
+  }
+
+  // true if the events are count consecutive sequence numbers and rooms from the given ones
+  private static boolean isRun(List<long[]> events, long seq, int room, int count) {
+    if (events.size() != count) {
+      return false;
+    }
+    for (int i = 0; i < count; i++) {
+      if (events.get(i)[0] != seq + i || events.get(i)[1] != room + i) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void delete(Path dir) {
+    if (dir == null) {
+      return;
+    }
+    try (Stream<Path> files = Files.list(dir)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.delete(file);
+      }
+      Files.delete(dir);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private static void check(String name, boolean passed) {
+    System.out.println((passed ? "PASS " : "FAIL ") + name);
+    if (!passed) {
+      failures++;
+    }
+  }
 }